@@ -0,0 +1,134 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.session.data.neo4j;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.neo4j.ogm.config.Configuration;
+import org.neo4j.ogm.session.SessionFactory;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Base class for the {@link OgmSessionRepository} benchmarks. Every trial runs against
+ * its own in-process, impermanent Neo4j database started through OGM's embedded driver,
+ * so the benchmarks do not need a running server.
+ *
+ * @author Eric Spiegelberg
+ */
+public abstract class AbstractRepositoryBenchmark {
+
+	protected static final Duration MAX_INACTIVE_INTERVAL = Duration.ofDays(1);
+
+	protected static final String VALUE_TYPE_STRING = "string";
+
+	protected static final String VALUE_TYPE_SERIALIZABLE = "serializable";
+
+	protected SessionFactory sessionFactory;
+
+	protected OgmSessionRepository repository;
+
+	@Setup(Level.Trial)
+	public void startDatabase() {
+		// Without a URI OGM uses the embedded driver with an impermanent database
+		Configuration configuration = new Configuration.Builder().build();
+		this.sessionFactory = new SessionFactory(configuration,
+				getClass().getPackage().getName());
+		this.repository = new OgmSessionRepository(this.sessionFactory);
+		this.repository.setInitializeSchema(true);
+		configureRepository(this.repository);
+		this.repository.afterPropertiesSet();
+	}
+
+	/**
+	 * Apply benchmark specific settings to the repository before it is initialized.
+	 */
+	protected void configureRepository(OgmSessionRepository repository) {
+	}
+
+	@TearDown(Level.Trial)
+	public void stopDatabase() {
+		this.sessionFactory.close();
+	}
+
+	protected OgmSessionRepository.OgmSession createSession() {
+		OgmSessionRepository.OgmSession session = this.repository.createSession();
+		session.setMaxInactiveInterval(MAX_INACTIVE_INTERVAL);
+		return session;
+	}
+
+	/**
+	 * Run a statement outside of the repository, e.g. to prepare data in bulk.
+	 */
+	protected void execute(String cypher, Map<String, Object> parameters) {
+		this.sessionFactory.openSession().query(cypher, parameters);
+	}
+
+	protected void deleteAllSessions() {
+		execute("match (n:" + OgmSessionRepository.DEFAULT_LABEL + ") detach delete n",
+				new HashMap<>());
+	}
+
+	/**
+	 * A string of the given size, deterministic so that runs are comparable.
+	 */
+	protected static String stringValue(int size) {
+		StringBuilder value = new StringBuilder(size);
+		for (int i = 0; i < size; i++) {
+			value.append((char) ('a' + (i * 31 + size) % 26));
+		}
+		return value.toString();
+	}
+
+	/**
+	 * An attribute value of the given type. Strings are stored as native properties,
+	 * while {@link #VALUE_TYPE_SERIALIZABLE} values go through serialization, compression
+	 * and deserialization.
+	 */
+	protected static Object attributeValue(String valueType, int size) {
+		if (VALUE_TYPE_SERIALIZABLE.equals(valueType)) {
+			return new SerializableValue(size, stringValue(size));
+		}
+		return stringValue(size);
+	}
+
+	/**
+	 * A plain object attribute value, as applications typically keep in their sessions.
+	 */
+	static class SerializableValue implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long id;
+
+		private final String value;
+
+		private final Date created = new Date(0);
+
+		SerializableValue(long id, String value) {
+			this.id = id;
+			this.value = value;
+		}
+
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.session.data.neo4j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link OgmSessionRepository#cleanUpExpiredSessions()} for different numbers of
+ * expired sessions. Each invocation starts from a freshly created backlog next to a fixed
+ * number of live sessions.
+ *
+ * @author Eric Spiegelberg
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CleanUpExpiredSessionsBenchmark extends AbstractRepositoryBenchmark {
+
+	private static final String CREATE_SESSIONS_QUERY = "unwind range(1, {count}) as i "
+			+ "create (n:" + OgmSessionRepository.DEFAULT_LABEL + " {sessionId: {prefix} + i, "
+			+ "creationTime: {creationTime}, lastAccessedTime: {creationTime}, "
+			+ "maxInactiveInterval: {maxInactiveInterval}, "
+			+ "expiryTime: {creationTime} + {maxInactiveInterval}, version: 1})";
+
+	@Param({ "100", "1000", "10000" })
+	public int backlog;
+
+	@Param({ "1000" })
+	public int liveSessions;
+
+	@Setup(Level.Trial)
+	public void createLiveSessions() {
+		createSessions("live-", this.liveSessions, System.currentTimeMillis());
+	}
+
+	@Setup(Level.Invocation)
+	public void createExpiredSessions() {
+		createSessions("expired-", this.backlog,
+				System.currentTimeMillis() - 2 * MAX_INACTIVE_INTERVAL.toMillis());
+	}
+
+	@Benchmark
+	public void cleanUpExpiredSessions() {
+		this.repository.cleanUpExpiredSessions();
+	}
+
+	private void createSessions(String prefix, int count, long creationTime) {
+		Map<String, Object> parameters = new HashMap<>();
+		parameters.put("count", count);
+		parameters.put("prefix", prefix);
+		parameters.put("creationTime", creationTime);
+		parameters.put("maxInactiveInterval", MAX_INACTIVE_INTERVAL.toMillis());
+		execute(CREATE_SESSIONS_QUERY, parameters);
+	}
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.session.data.neo4j;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.session.FindByIndexNameSessionRepository;
+
+/**
+ * Measures {@link OgmSessionRepository#findByIndexNameAndIndexValue(String, String)} with
+ * a growing number of sessions per principal.
+ *
+ * @author Eric Spiegelberg
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FindByPrincipalNameBenchmark extends AbstractRepositoryBenchmark {
+
+	private static final String PRINCIPAL_NAME = "user";
+
+	@Param({ "1", "10", "100" })
+	public int sessionsPerPrincipal;
+
+	@Param({ "5" })
+	public int attributeCount;
+
+	@Setup(Level.Trial)
+	public void saveSessions() {
+		for (int i = 0; i < this.sessionsPerPrincipal; i++) {
+			OgmSessionRepository.OgmSession session = createSession();
+			session.setAttribute(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME,
+					PRINCIPAL_NAME);
+			for (int j = 0; j < this.attributeCount; j++) {
+				session.setAttribute("attribute" + j, stringValue(64));
+			}
+			this.repository.save(session);
+		}
+		// Sessions of other principals the index has to skip
+		for (int i = 0; i < 1000; i++) {
+			OgmSessionRepository.OgmSession session = createSession();
+			session.setAttribute(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME,
+					PRINCIPAL_NAME + i);
+			this.repository.save(session);
+		}
+	}
+
+	@Benchmark
+	public Map<String, OgmSessionRepository.OgmSession> findByPrincipalName() {
+		return this.repository.findByIndexNameAndIndexValue(
+				FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, PRINCIPAL_NAME);
+	}
+
+}
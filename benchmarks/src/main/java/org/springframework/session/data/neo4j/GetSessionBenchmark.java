@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.session.data.neo4j;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link OgmSessionRepository#getSession(String)} with varying attribute counts,
+ * attribute sizes and value types, with and without compression of serialized values.
+ *
+ * @author Eric Spiegelberg
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class GetSessionBenchmark extends AbstractRepositoryBenchmark {
+
+	@Param({ "1", "10", "50" })
+	public int attributeCount;
+
+	@Param({ "16", "1024", "16384" })
+	public int attributeSize;
+
+	@Param({ VALUE_TYPE_STRING, VALUE_TYPE_SERIALIZABLE })
+	public String valueType;
+
+	@Param({ "false", "true" })
+	public boolean compressed;
+
+	private String sessionId;
+
+	@Override
+	protected void configureRepository(OgmSessionRepository repository) {
+		if (this.compressed) {
+			repository.setAttributeCompressor(
+					new AttributeCompressor(AttributeCompressor.Algorithm.DEFLATE));
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void saveSession() {
+		OgmSessionRepository.OgmSession session = createSession();
+		for (int i = 0; i < this.attributeCount; i++) {
+			session.setAttribute("attribute" + i, attributeValue(this.valueType, this.attributeSize));
+		}
+		this.repository.save(session);
+		this.sessionId = session.getId();
+	}
+
+	@Benchmark
+	public OgmSessionRepository.OgmSession getSession(Blackhole blackhole) {
+		OgmSessionRepository.OgmSession session = this.repository.getSession(this.sessionId);
+		// Serialized values are only deserialized once read, as a request would
+		for (String attributeName : session.getAttributeNames()) {
+			blackhole.consume(session.getAttribute(attributeName));
+		}
+		return session;
+	}
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.session.data.neo4j;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link OgmSessionRepository#save(OgmSessionRepository.OgmSession)} for a new
+ * session, for an existing session with a changed attribute and for an existing session
+ * whose last accessed time is the only change.
+ *
+ * @author Eric Spiegelberg
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SaveBenchmark extends AbstractRepositoryBenchmark {
+
+	@Param({ "new", "delta", "touch" })
+	public String mode;
+
+	@Param({ "10" })
+	public int attributeCount;
+
+	@Param({ VALUE_TYPE_STRING, VALUE_TYPE_SERIALIZABLE })
+	public String valueType;
+
+	private OgmSessionRepository.OgmSession session;
+
+	private long counter;
+
+	@Setup(Level.Trial)
+	public void createExistingSession() {
+		this.session = createSession();
+		for (int i = 0; i < this.attributeCount; i++) {
+			this.session.setAttribute("attribute" + i, attributeValue(this.valueType, 64));
+		}
+		this.repository.save(this.session);
+	}
+
+	@Setup(Level.Iteration)
+	public void deleteCreatedSessions() {
+		if ("new".equals(this.mode)) {
+			deleteAllSessions();
+		}
+	}
+
+	@Benchmark
+	public OgmSessionRepository.OgmSession save() {
+		OgmSessionRepository.OgmSession session;
+		switch (this.mode) {
+		case "new":
+			session = createSession();
+			for (int i = 0; i < this.attributeCount; i++) {
+				session.setAttribute("attribute" + i, attributeValue(this.valueType, 64));
+			}
+			break;
+		case "delta":
+			session = this.session;
+			session.setAttribute("counter", VALUE_TYPE_SERIALIZABLE.equals(this.valueType)
+					? new SerializableValue(this.counter++, stringValue(64)) : this.counter++);
+			break;
+		default:
+			session = this.session;
+			session.setLastAccessedTime(session.getLastAccessedTime().plusSeconds(1));
+		}
+		this.repository.save(session);
+		return session;
+	}
+
+}
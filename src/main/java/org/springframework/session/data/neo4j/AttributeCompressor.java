@@ -0,0 +1,234 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.session.data.neo4j;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+
+import org.springframework.util.Assert;
+
+/**
+ * Compresses serialized attribute values that exceed a size threshold.
+ * <p>
+ * Compressed values start with a six byte header: {@code 0xCE}, the {@link Algorithm}
+ * id and the uncompressed length as a four byte big-endian integer. Values without the
+ * header are stored as they are, so compressed and uncompressed values can be read side
+ * by side and compression can be enabled or the algorithm switched at any time. Values
+ * are only stored compressed if that makes them smaller, and never if they exceed
+ * {@link #MAX_LENGTH}.
+ *
+ * @author Eric Spiegelberg
+ */
+public class AttributeCompressor {
+
+	/**
+	 * The default minimum size in bytes of a serialized value to be compressed.
+	 */
+	public static final int DEFAULT_THRESHOLD = 1024;
+
+	/**
+	 * The maximum uncompressed length of a value, larger declared lengths are rejected
+	 * before any memory is allocated for them.
+	 */
+	public static final int MAX_LENGTH = 64 * 1024 * 1024;
+
+	static final byte MAGIC = (byte) 0xCE;
+
+	private static final int HEADER_LENGTH = 6;
+
+	/**
+	 * The supported compression algorithms.
+	 */
+	public enum Algorithm {
+
+		/**
+		 * {@link Deflater} compression from the JDK.
+		 */
+		DEFLATE(1),
+
+		/**
+		 * LZ4 compression, faster but less compact than Deflate. Requires
+		 * {@code org.lz4:lz4-java}.
+		 */
+		LZ4(2);
+
+		private final byte id;
+
+		Algorithm(int id) {
+			this.id = (byte) id;
+		}
+
+		static Algorithm forId(byte id) {
+			for (Algorithm algorithm : values()) {
+				if (algorithm.id == id) {
+					return algorithm;
+				}
+			}
+			throw new IllegalArgumentException("Unknown compression algorithm id " + id);
+		}
+
+	}
+
+	private final Algorithm algorithm;
+
+	private final int threshold;
+
+	/**
+	 * Create a new {@link AttributeCompressor} instance using {@link #DEFAULT_THRESHOLD}.
+	 * @param algorithm the algorithm used to compress values
+	 */
+	public AttributeCompressor(Algorithm algorithm) {
+		this(algorithm, DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Create a new {@link AttributeCompressor} instance.
+	 * @param algorithm the algorithm used to compress values
+	 * @param threshold the minimum size in bytes of a value to be compressed
+	 */
+	public AttributeCompressor(Algorithm algorithm, int threshold) {
+		Assert.notNull(algorithm, "algorithm must not be null");
+		Assert.isTrue(threshold >= 0, "threshold must not be negative");
+		this.algorithm = algorithm;
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Compress the given value if it reaches the threshold and compression makes it
+	 * smaller.
+	 * @param value the serialized value
+	 * @return the compressed value including its header, or the given value
+	 */
+	public byte[] compress(byte[] value) {
+		if (value.length < this.threshold || value.length > MAX_LENGTH) {
+			return value;
+		}
+		byte[] compressed = (this.algorithm == Algorithm.LZ4) ? Lz4.compress(value)
+				: deflate(value);
+		return (compressed.length < value.length) ? compressed : value;
+	}
+
+	/**
+	 * Whether the given value carries a compression header.
+	 * @param value the stored value
+	 * @return true if the value is compressed
+	 */
+	public static boolean isCompressed(byte[] value) {
+		return value.length > HEADER_LENGTH && value[0] == MAGIC
+				&& (value[1] == Algorithm.DEFLATE.id || value[1] == Algorithm.LZ4.id);
+	}
+
+	/**
+	 * Decompress a value written by {@link #compress(byte[])} with any algorithm.
+	 * @param value the compressed value including its header
+	 * @return the serialized value
+	 */
+	public static byte[] decompress(byte[] value) {
+		Assert.isTrue(isCompressed(value), "value is not compressed");
+		int length = ((value[2] & 0xFF) << 24) | ((value[3] & 0xFF) << 16)
+				| ((value[4] & 0xFF) << 8) | (value[5] & 0xFF);
+		if (length < 0 || length > MAX_LENGTH) {
+			throw new IllegalStateException("Compressed attribute value declares an invalid length " + length);
+		}
+		return (Algorithm.forId(value[1]) == Algorithm.LZ4) ? Lz4.decompress(value, length)
+				: inflate(value, length);
+	}
+
+	private static byte[] deflate(byte[] value) {
+		Deflater deflater = new Deflater();
+		try {
+			deflater.setInput(value);
+			deflater.finish();
+			ByteArrayOutputStream output = new ByteArrayOutputStream(value.length / 2 + HEADER_LENGTH);
+			writeHeader(output, Algorithm.DEFLATE, value.length);
+			byte[] buffer = new byte[8192];
+			while (!deflater.finished()) {
+				output.write(buffer, 0, deflater.deflate(buffer));
+			}
+			return output.toByteArray();
+		}
+		finally {
+			deflater.end();
+		}
+	}
+
+	private static byte[] inflate(byte[] value, int length) {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(value, HEADER_LENGTH, value.length - HEADER_LENGTH);
+			byte[] result = new byte[length];
+			int offset = 0;
+			while (offset < length && !inflater.finished()) {
+				int inflated = inflater.inflate(result, offset, length - offset);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IllegalStateException("Compressed attribute value is truncated");
+				}
+				offset += inflated;
+			}
+			return result;
+		}
+		catch (DataFormatException e) {
+			throw new IllegalStateException("Compressed attribute value is corrupt", e);
+		}
+		finally {
+			inflater.end();
+		}
+	}
+
+	private static void writeHeader(ByteArrayOutputStream output, Algorithm algorithm,
+			int length) {
+		output.write(MAGIC);
+		output.write(algorithm.id);
+		output.write(length >>> 24);
+		output.write(length >>> 16);
+		output.write(length >>> 8);
+		output.write(length);
+	}
+
+	/**
+	 * Kept in a separate class so lz4-java is only loaded when it is used.
+	 */
+	private static class Lz4 {
+
+		static byte[] compress(byte[] value) {
+			LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+			byte[] compressed = new byte[HEADER_LENGTH + compressor.maxCompressedLength(value.length)];
+			int compressedLength = compressor.compress(value, 0, value.length, compressed,
+					HEADER_LENGTH, compressed.length - HEADER_LENGTH);
+			ByteArrayOutputStream header = new ByteArrayOutputStream(HEADER_LENGTH);
+			writeHeader(header, Algorithm.LZ4, value.length);
+			System.arraycopy(header.toByteArray(), 0, compressed, 0, HEADER_LENGTH);
+			byte[] result = new byte[HEADER_LENGTH + compressedLength];
+			System.arraycopy(compressed, 0, result, 0, result.length);
+			return result;
+		}
+
+		static byte[] decompress(byte[] value, int length) {
+			byte[] result = new byte[length];
+			LZ4Factory.fastestInstance().fastDecompressor().decompress(value, HEADER_LENGTH,
+					result, 0, length);
+			return result;
+		}
+
+	}
+
+}
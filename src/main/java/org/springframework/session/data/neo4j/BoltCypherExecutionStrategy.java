@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.session.data.neo4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.neo4j.driver.v1.AccessMode;
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.Record;
+import org.neo4j.driver.v1.Session;
+import org.neo4j.driver.v1.StatementResult;
+import org.neo4j.driver.v1.summary.SummaryCounters;
+import org.neo4j.ogm.model.Result;
+import org.neo4j.ogm.response.model.QueryResultModel;
+import org.neo4j.ogm.response.model.QueryStatisticsModel;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link CypherExecutionStrategy} running statements as auto-commit transactions
+ * directly on a Neo4j Bolt {@link Driver}, bypassing OGM. Reads use
+ * {@link AccessMode#READ} sessions so they can be routed to followers.
+ * <p>
+ * Nodes are returned as the driver's {@link org.neo4j.driver.v1.types.Node} and are
+ * meant to be read by {@link BoltSessionRepository}.
+ *
+ * @author Eric Spiegelberg
+ */
+public class BoltCypherExecutionStrategy implements CypherExecutionStrategy {
+
+	private static final Log logger = LogFactory.getLog(BoltCypherExecutionStrategy.class);
+
+	private final Driver driver;
+
+	public BoltCypherExecutionStrategy(Driver driver) {
+		Assert.notNull(driver, "Property 'driver' must not be null");
+		this.driver = driver;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Result execute(String cypher, Map<String, ?> parameters, boolean readOnly) {
+
+		try (Session session = this.driver.session(readOnly ? AccessMode.READ : AccessMode.WRITE)) {
+
+			StatementResult statementResult = session.run(cypher, (Map<String, Object>) parameters);
+
+			List<Map<String, Object>> rows = new ArrayList<>();
+			while (statementResult.hasNext()) {
+				Record record = statementResult.next();
+				rows.add(record.asMap());
+			}
+
+			return new QueryResultModel(rows, createStatistics(statementResult.consume().counters()));
+
+		} catch (RuntimeException e) {
+			String message = "Exception while executing cypher: '" + cypher + "'";
+			logger.error(message);
+			throw new RuntimeException(message, e);
+		}
+
+	}
+
+	/**
+	 * Copy all counters of the driver into OGM's statistics, so that callers can rely on
+	 * any of them regardless of the execution strategy.
+	 */
+	private static QueryStatisticsModel createStatistics(SummaryCounters counters) {
+		QueryStatisticsModel statistics = new QueryStatisticsModel();
+		statistics.setContains_updates(counters.containsUpdates());
+		statistics.setNodes_created(counters.nodesCreated());
+		statistics.setNodes_deleted(counters.nodesDeleted());
+		statistics.setProperties_set(counters.propertiesSet());
+		statistics.setRelationships_created(counters.relationshipsCreated());
+		statistics.setRelationship_deleted(counters.relationshipsDeleted());
+		statistics.setLabels_added(counters.labelsAdded());
+		statistics.setLabels_removed(counters.labelsRemoved());
+		statistics.setIndexes_added(counters.indexesAdded());
+		statistics.setIndexes_removed(counters.indexesRemoved());
+		statistics.setConstraints_added(counters.constraintsAdded());
+		statistics.setConstraints_removed(counters.constraintsRemoved());
+		return statistics;
+	}
+
+}
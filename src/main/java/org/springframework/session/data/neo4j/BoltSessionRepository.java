@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.session.data.neo4j;
+
+import java.lang.reflect.Array;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.Value;
+import org.neo4j.driver.v1.types.Node;
+
+/**
+ * A {@link org.springframework.session.SessionRepository} implementation that talks to
+ * Neo4j through the Bolt {@link Driver} directly instead of OGM's
+ * {@link org.neo4j.ogm.session.SessionFactory}. Node properties are read straight from the
+ * driver's records without building OGM's mapping model.
+ * <p>
+ * Sessions use the same node layout, queries, label and serialization configuration as
+ * {@link OgmSessionRepository}, so both implementations can share one session store.
+ *
+ * @author Eric Spiegelberg
+ */
+public class BoltSessionRepository extends OgmSessionRepository {
+
+	/**
+	 * Create a new {@link BoltSessionRepository} instance which uses the provided
+	 * {@link Driver} to manage sessions.
+	 * @param driver the {@link Driver} to use
+	 */
+	public BoltSessionRepository(Driver driver) {
+		super(null, new BoltCypherExecutionStrategy(driver));
+	}
+
+	@Override
+	protected Object getNodeProperty(Object node, String key) {
+		Value value = ((Node) node).get(key);
+		return value.isNull() ? null : toPropertyValue(value);
+	}
+
+	@Override
+	protected void forEachNodeProperty(Object node, BiConsumer<String, Object> action) {
+		Node n = (Node) node;
+		for (String key : n.keys()) {
+			action.accept(key, toPropertyValue(n.get(key)));
+		}
+	}
+
+	/**
+	 * The driver returns array properties as lists, convert them back to the array types
+	 * {@link OgmSessionRepository} stores without serialization.
+	 */
+	private static Object toPropertyValue(Value value) {
+		Object object = value.asObject();
+		if (!(object instanceof List)) {
+			return object;
+		}
+		List<?> list = (List<?>) object;
+		Class<?> elementType = null;
+		for (Object element : list) {
+			if (elementType == null) {
+				elementType = element.getClass();
+			} else if (elementType != element.getClass()) {
+				return list.toArray();
+			}
+		}
+		if (elementType == null) {
+			return new String[0];
+		}
+		return list.toArray((Object[]) Array.newInstance(elementType, list.size()));
+	}
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.session.data.neo4j;
+
+import java.util.Map;
+
+import org.neo4j.ogm.model.Result;
+
+/**
+ * Strategy used by {@link OgmSessionRepository} to run its Cypher statements, deciding
+ * how sessions, transactions and routing are handled for each statement.
+ *
+ * @author Eric Spiegelberg
+ * @see OgmCypherExecutionStrategy
+ */
+public interface CypherExecutionStrategy {
+
+	/**
+	 * Execute the given Cypher statement.
+	 * @param cypher the Cypher statement
+	 * @param parameters the statement parameters
+	 * @param readOnly true if the statement does not write, allowing it to be routed to a
+	 * read replica or run without an explicit transaction
+	 * @return the result of the statement
+	 */
+	Result execute(String cypher, Map<String, ?> parameters, boolean readOnly);
+
+}
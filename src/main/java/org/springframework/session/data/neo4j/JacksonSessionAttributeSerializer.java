@@ -0,0 +1,174 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.session.data.neo4j;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.jsontype.TypeResolverBuilder;
+
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+/**
+ * A {@link SessionAttributeSerializer} writing attribute values as JSON with Jackson.
+ * The class name of the value is written in front of the JSON document so it can be read
+ * back as the same type.
+ * <p>
+ * Both that class name and any type information inside the document come from the
+ * session store, so whoever can write to it chooses the classes Jackson instantiates.
+ * Unrestricted default typing is a well known remote code execution vector. The
+ * default {@link ObjectMapper} therefore only reads types from the given trusted
+ * packages, and the types of {@code java.lang}, {@code java.util}, {@code java.time}
+ * and {@code java.math} at the top level. Default typing is only enabled for declared
+ * types within the trusted packages, so only those round trip polymorphically. A custom
+ * {@link ObjectMapper} is responsible for restricting the types it reads itself, e.g.
+ * by registering Spring Security's Jackson modules.
+ *
+ * @author Eric Spiegelberg
+ */
+public class JacksonSessionAttributeSerializer implements SessionAttributeSerializer {
+
+	/**
+	 * The format marker of JSON values.
+	 */
+	public static final byte FORMAT = 1;
+
+	private static final Set<String> TRUSTED_JDK_PACKAGES = new HashSet<>(
+			Arrays.asList("java.lang", "java.util", "java.time", "java.math"));
+
+	private final ObjectMapper objectMapper;
+
+	private final ClassLoader classLoader;
+
+	private final List<String> trustedPackages;
+
+	/**
+	 * Create a new {@link JacksonSessionAttributeSerializer} instance that only reads
+	 * types from the given packages, including their sub-packages.
+	 * @param trustedPackages the packages of the attribute value types
+	 */
+	public JacksonSessionAttributeSerializer(String... trustedPackages) {
+		Assert.notEmpty(trustedPackages, "trustedPackages must not be empty");
+		this.trustedPackages = Arrays.asList(trustedPackages);
+		this.objectMapper = createObjectMapper(this.trustedPackages);
+		this.classLoader = null;
+	}
+
+	/**
+	 * Create a new {@link JacksonSessionAttributeSerializer} instance.
+	 * @param objectMapper the {@link ObjectMapper} to use, which must restrict the types
+	 * it reads
+	 * @param classLoader the class loader used to resolve value types, may be
+	 * {@code null} to use the default class loader
+	 */
+	public JacksonSessionAttributeSerializer(ObjectMapper objectMapper, ClassLoader classLoader) {
+		Assert.notNull(objectMapper, "objectMapper must not be null");
+		this.objectMapper = objectMapper;
+		this.classLoader = classLoader;
+		this.trustedPackages = null;
+	}
+
+	private static ObjectMapper createObjectMapper(List<String> trustedPackages) {
+		ObjectMapper objectMapper = new ObjectMapper();
+		objectMapper.findAndRegisterModules();
+		TypeResolverBuilder<?> typeResolverBuilder = new TrustedTypeResolverBuilder(trustedPackages)
+				.init(JsonTypeInfo.Id.CLASS, null)
+				.inclusion(JsonTypeInfo.As.PROPERTY);
+		objectMapper.setDefaultTyping(typeResolverBuilder);
+		objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+		return objectMapper;
+	}
+
+	private static boolean isInPackages(Class<?> type, List<String> packages) {
+		String packageName = ClassUtils.getPackageName(type);
+		for (String trustedPackage : packages) {
+			if (packageName.equals(trustedPackage) || packageName.startsWith(trustedPackage + ".")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public byte getFormat() {
+		return FORMAT;
+	}
+
+	@Override
+	public void serialize(Object object, OutputStream outputStream) throws IOException {
+		DataOutputStream output = new DataOutputStream(outputStream);
+		output.writeUTF(object.getClass().getName());
+		output.write(this.objectMapper.writeValueAsBytes(object));
+		output.flush();
+	}
+
+	@Override
+	public Object deserialize(InputStream inputStream) throws IOException {
+		DataInputStream input = new DataInputStream(inputStream);
+		String className = input.readUTF();
+		Class<?> type;
+		try {
+			type = ClassUtils.forName(className, this.classLoader);
+		}
+		catch (ClassNotFoundException | LinkageError e) {
+			throw new IOException("Cannot resolve attribute type " + className, e);
+		}
+		if (this.trustedPackages != null && !TRUSTED_JDK_PACKAGES.contains(ClassUtils.getPackageName(type))
+				&& !isInPackages(type, this.trustedPackages)) {
+			throw new IOException("Attribute type " + className + " is not in a trusted package");
+		}
+		return this.objectMapper.readValue(input, type);
+	}
+
+	/**
+	 * Enables default typing for non-final types declared within the trusted packages
+	 * only, so that a type id read from the document must name one of their subtypes.
+	 */
+	private static class TrustedTypeResolverBuilder extends ObjectMapper.DefaultTypeResolverBuilder {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<String> trustedPackages;
+
+		TrustedTypeResolverBuilder(List<String> trustedPackages) {
+			super(ObjectMapper.DefaultTyping.NON_FINAL);
+			this.trustedPackages = trustedPackages;
+		}
+
+		@Override
+		public boolean useForType(JavaType t) {
+			while (t.isArrayType()) {
+				t = t.getContentType();
+			}
+			return super.useForType(t) && isInPackages(t.getRawClass(), this.trustedPackages);
+		}
+
+	}
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.session.data.neo4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.springframework.core.serializer.DefaultDeserializer;
+import org.springframework.core.serializer.DefaultSerializer;
+
+/**
+ * A {@link SessionAttributeSerializer} using Java serialization, the format written by
+ * previous versions.
+ * <p>
+ * Its format marker is the first byte of the Java serialization stream header, so values
+ * are stored without an extra marker byte and remain readable by previous versions.
+ *
+ * @author Eric Spiegelberg
+ */
+public class JdkSessionAttributeSerializer implements SessionAttributeSerializer {
+
+	/**
+	 * The format marker, the first byte of every Java serialization stream.
+	 */
+	public static final byte FORMAT = (byte) 0xAC;
+
+	private final DefaultSerializer serializer = new DefaultSerializer();
+
+	private final DefaultDeserializer deserializer;
+
+	public JdkSessionAttributeSerializer() {
+		this(null);
+	}
+
+	/**
+	 * Create a new {@link JdkSessionAttributeSerializer} instance.
+	 * @param classLoader the class loader used to resolve classes when deserializing, may
+	 * be {@code null} to use the default class loader
+	 */
+	public JdkSessionAttributeSerializer(ClassLoader classLoader) {
+		this.deserializer = new DefaultDeserializer(classLoader);
+	}
+
+	@Override
+	public byte getFormat() {
+		return FORMAT;
+	}
+
+	@Override
+	public void serialize(Object object, OutputStream outputStream) throws IOException {
+		this.serializer.serialize(object, outputStream);
+	}
+
+	@Override
+	public Object deserialize(InputStream inputStream) throws IOException {
+		return this.deserializer.deserialize(inputStream);
+	}
+
+}
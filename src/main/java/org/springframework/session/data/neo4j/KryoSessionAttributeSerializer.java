@@ -0,0 +1,184 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.session.data.neo4j;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Registration;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.DefaultClassResolver;
+import com.esotericsoftware.kryo.util.MapReferenceResolver;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+/**
+ * A {@link SessionAttributeSerializer} writing attribute values in Kryo's compact binary
+ * format.
+ * <p>
+ * By default every value carries the names of its classes. Registering the classes that
+ * are commonly stored writes a small numeric id instead. Registration ids depend on the
+ * registration order, so every instance sharing a session store must register the same
+ * classes in the same order, and must do so before the serializer is first used.
+ * <p>
+ * The class names come from the session store, so whoever can write to it chooses the
+ * classes Kryo instantiates. As with {@link JacksonSessionAttributeSerializer}, only the
+ * registered classes, the types of {@code java.lang}, {@code java.util},
+ * {@code java.time} and {@code java.math} and the types of the trusted packages are
+ * read, at any depth of the value.
+ *
+ * @author Eric Spiegelberg
+ */
+public class KryoSessionAttributeSerializer implements SessionAttributeSerializer {
+
+	/**
+	 * The format marker of Kryo values.
+	 */
+	public static final byte FORMAT = 2;
+
+	private static final Set<String> TRUSTED_JDK_PACKAGES = new HashSet<>(
+			Arrays.asList("java.lang", "java.util", "java.time", "java.math"));
+
+	private final ClassLoader classLoader;
+
+	private final List<Class<?>> registeredClasses = new ArrayList<>();
+
+	private final List<String> trustedPackages = new ArrayList<>();
+
+	/**
+	 * Kryo instances are not thread safe.
+	 */
+	private final ThreadLocal<Kryo> kryo = ThreadLocal.withInitial(this::createKryo);
+
+	public KryoSessionAttributeSerializer() {
+		this(null);
+	}
+
+	/**
+	 * Create a new {@link KryoSessionAttributeSerializer} instance.
+	 * @param classLoader the class loader used to resolve classes, may be {@code null} to
+	 * use the default class loader
+	 */
+	public KryoSessionAttributeSerializer(ClassLoader classLoader) {
+		this.classLoader = classLoader;
+	}
+
+	/**
+	 * Set the classes written as numeric ids instead of class names.
+	 * @param registeredClasses the classes to register, in a stable order
+	 */
+	public void setRegisteredClasses(List<Class<?>> registeredClasses) {
+		Assert.notNull(registeredClasses, "registeredClasses must not be null");
+		this.registeredClasses.clear();
+		this.registeredClasses.addAll(registeredClasses);
+	}
+
+	/**
+	 * Set the packages, including their sub-packages, whose types are read in addition to
+	 * the registered classes and the trusted JDK types.
+	 * @param trustedPackages the packages of the attribute value types
+	 */
+	public void setTrustedPackages(List<String> trustedPackages) {
+		Assert.notNull(trustedPackages, "trustedPackages must not be null");
+		this.trustedPackages.clear();
+		this.trustedPackages.addAll(trustedPackages);
+	}
+
+	/**
+	 * Create the {@link Kryo} instance used by the current thread. Subclasses may
+	 * override this to register custom serializers.
+	 * @return a new {@link Kryo} instance
+	 */
+	protected Kryo createKryo() {
+		Kryo kryo = new Kryo(new TrustedClassResolver(), new MapReferenceResolver());
+		kryo.setRegistrationRequired(false);
+		kryo.setInstantiatorStrategy(
+				new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+		if (this.classLoader != null) {
+			kryo.setClassLoader(this.classLoader);
+		}
+		for (Class<?> registeredClass : this.registeredClasses) {
+			kryo.register(registeredClass);
+		}
+		return kryo;
+	}
+
+	@Override
+	public byte getFormat() {
+		return FORMAT;
+	}
+
+	@Override
+	public void serialize(Object object, OutputStream outputStream) {
+		Output output = new Output(outputStream);
+		this.kryo.get().writeClassAndObject(output, object);
+		output.flush();
+	}
+
+	@Override
+	public Object deserialize(InputStream inputStream) {
+		return this.kryo.get().readClassAndObject(new Input(inputStream));
+	}
+
+	private boolean isTrusted(Class<?> type) {
+		while (type.isArray()) {
+			type = type.getComponentType();
+		}
+		if (type.isPrimitive() || this.registeredClasses.contains(type)) {
+			return true;
+		}
+		String packageName = ClassUtils.getPackageName(type);
+		if (TRUSTED_JDK_PACKAGES.contains(packageName)) {
+			return true;
+		}
+		for (String trustedPackage : this.trustedPackages) {
+			if (packageName.equals(trustedPackage) || packageName.startsWith(trustedPackage + ".")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Rejects class names read from a value that name untrusted types, before Kryo
+	 * instantiates them. Registered classes are read by id and never reach this check.
+	 */
+	private class TrustedClassResolver extends DefaultClassResolver {
+
+		@Override
+		protected Registration readName(Input input) {
+			Registration registration = super.readName(input);
+			if (!isTrusted(registration.getType())) {
+				throw new KryoException("Attribute type " + registration.getType().getName()
+						+ " is not in a trusted package");
+			}
+			return registration;
+		}
+
+	}
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.session.data.neo4j;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import org.springframework.util.Assert;
+
+/**
+ * An {@link OgmSessionMetrics} implementation publishing to a Micrometer
+ * {@link MeterRegistry}. Every meter is tagged with the label sessions are stored under:
+ * <ul>
+ * <li>{@code spring.session.neo4j.operations}, a timer tagged with the {@code operation}
+ * and its {@code outcome}</li>
+ * <li>{@code spring.session.neo4j.save.serialized}, a histogram of the serialized
+ * attribute bytes written per save</li>
+ * <li>{@code spring.session.neo4j.save.properties}, a histogram of the node properties
+ * written per save</li>
+ * <li>{@code spring.session.neo4j.compression}, a timer of attribute value compression</li>
+ * <li>{@code spring.session.neo4j.compression.ratio}, a summary of the compressed size
+ * relative to the uncompressed size of compressed attribute values</li>
+ * <li>{@code spring.session.neo4j.expired.reads}, counting sessions deleted because they
+ * were found expired on read</li>
+ * <li>{@code spring.session.neo4j.rollbacks}, counting failed statements</li>
+ * </ul>
+ *
+ * @author Eric Spiegelberg
+ */
+public class MicrometerOgmSessionMetrics implements OgmSessionMetrics {
+
+	private static final String PREFIX = "spring.session.neo4j.";
+
+	private final Map<Operation, Timer> successTimers = new EnumMap<>(Operation.class);
+
+	private final Map<Operation, Timer> failureTimers = new EnumMap<>(Operation.class);
+
+	private final DistributionSummary serializedBytes;
+
+	private final DistributionSummary propertyCount;
+
+	private final Timer compressionTimer;
+
+	private final DistributionSummary compressionRatio;
+
+	private final Counter expiredReads;
+
+	private final Counter rollbacks;
+
+	/**
+	 * Create a new {@link MicrometerOgmSessionMetrics} instance.
+	 * @param registry the registry to publish to
+	 * @param label the label sessions are stored under
+	 */
+	public MicrometerOgmSessionMetrics(MeterRegistry registry, String label) {
+		Assert.notNull(registry, "registry must not be null");
+		Assert.hasText(label, "label must not be empty");
+		for (Operation operation : Operation.values()) {
+			this.successTimers.put(operation, timer(registry, label, operation, "success"));
+			this.failureTimers.put(operation, timer(registry, label, operation, "failure"));
+		}
+		this.serializedBytes = DistributionSummary.builder(PREFIX + "save.serialized")
+				.description("Serialized attribute bytes written per save")
+				.baseUnit("bytes")
+				.tag("label", label)
+				.publishPercentileHistogram()
+				.register(registry);
+		this.propertyCount = DistributionSummary.builder(PREFIX + "save.properties")
+				.description("Node properties written per save")
+				.tag("label", label)
+				.publishPercentileHistogram()
+				.register(registry);
+		this.compressionTimer = Timer.builder(PREFIX + "compression")
+				.description("Attribute value compression")
+				.tag("label", label)
+				.register(registry);
+		this.compressionRatio = DistributionSummary.builder(PREFIX + "compression.ratio")
+				.description("Compressed size relative to the uncompressed size")
+				.tag("label", label)
+				.register(registry);
+		this.expiredReads = Counter.builder(PREFIX + "expired.reads")
+				.description("Sessions deleted because they were expired when read")
+				.tag("label", label)
+				.register(registry);
+		this.rollbacks = Counter.builder(PREFIX + "rollbacks")
+				.description("Statements that failed and were rolled back")
+				.tag("label", label)
+				.register(registry);
+	}
+
+	private static Timer timer(MeterRegistry registry, String label, Operation operation,
+			String outcome) {
+		return Timer.builder(PREFIX + "operations")
+				.description("Session repository operations")
+				.tag("label", label)
+				.tag("operation", operation.name().toLowerCase())
+				.tag("outcome", outcome)
+				.register(registry);
+	}
+
+	@Override
+	public void recordOperation(Operation operation, long durationNanos, boolean success) {
+		(success ? this.successTimers : this.failureTimers).get(operation)
+				.record(durationNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void recordSave(int propertyCount, long serializedBytes) {
+		this.propertyCount.record(propertyCount);
+		this.serializedBytes.record(serializedBytes);
+	}
+
+	@Override
+	public void recordCompression(int uncompressedBytes, int compressedBytes, long durationNanos) {
+		this.compressionTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+		this.compressionRatio.record((double) compressedBytes / uncompressedBytes);
+	}
+
+	@Override
+	public void recordExpiredOnRead() {
+		this.expiredReads.increment();
+	}
+
+	@Override
+	public void recordRollback() {
+		this.rollbacks.increment();
+	}
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.session.data.neo4j;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.neo4j.ogm.model.Result;
+import org.neo4j.ogm.session.Session;
+import org.neo4j.ogm.session.SessionFactory;
+import org.neo4j.ogm.transaction.Transaction;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.neo4j.transaction.SessionHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+/**
+ * The default {@link CypherExecutionStrategy}, running statements through OGM's
+ * {@link SessionFactory}.
+ * <p>
+ * Each statement runs in its own transaction, typed {@link Transaction.Type#READ_ONLY}
+ * for reads so causal cluster drivers can route them to followers. OGM sessions are not
+ * thread-safe, so every thread opens one on its first statement and reuses it for the
+ * following ones, clearing its mapping context after each statement. The sessions of all
+ * threads are released by {@link #destroy()}, which {@link OgmSessionRepository} calls on
+ * shutdown, so pooled threads outliving the repository do not keep them. Reads can optionally
+ * run as auto-commit statements instead, saving the {@code BEGIN} and {@code COMMIT}
+ * round trips. When Spring Data Neo4j is on the classpath and a Spring managed Neo4j
+ * transaction is active, statements run in that transaction instead.
+ *
+ * @author Eric Spiegelberg
+ */
+public class OgmCypherExecutionStrategy implements CypherExecutionStrategy, DisposableBean {
+
+	private static final Log logger = LogFactory.getLog(OgmCypherExecutionStrategy.class);
+
+	private static final boolean springDataNeo4jPresent = ClassUtils.isPresent(
+			"org.springframework.data.neo4j.transaction.SessionHolder",
+			OgmCypherExecutionStrategy.class.getClassLoader());
+
+	private final SessionFactory sessionFactory;
+
+	private final ThreadLocal<AtomicReference<Session>> sessions;
+
+	/**
+	 * The session slots of all threads, so they can be emptied from any thread.
+	 */
+	private final Set<AtomicReference<Session>> threadSessions = ConcurrentHashMap.newKeySet();
+
+	private boolean autoCommitReads;
+
+	private boolean joinSpringTransactions = springDataNeo4jPresent;
+
+	public OgmCypherExecutionStrategy(SessionFactory sessionFactory) {
+		Assert.notNull(sessionFactory, "Property 'sessionFactory' must not be null");
+		this.sessionFactory = sessionFactory;
+		this.sessions = ThreadLocal.withInitial(AtomicReference::new);
+	}
+
+	/**
+	 * Set whether read-only statements run without an explicit transaction. The default
+	 * is false.
+	 * @param autoCommitReads true to run reads as auto-commit statements
+	 */
+	public void setAutoCommitReads(boolean autoCommitReads) {
+		this.autoCommitReads = autoCommitReads;
+	}
+
+	/**
+	 * Set whether statements join a Spring managed Neo4j transaction bound to the
+	 * session factory. Defaults to true when Spring Data Neo4j is on the classpath.
+	 * @param joinSpringTransactions true to participate in Spring managed transactions
+	 */
+	public void setJoinSpringTransactions(boolean joinSpringTransactions) {
+		Assert.isTrue(!joinSpringTransactions || springDataNeo4jPresent,
+				"Joining Spring managed transactions requires Spring Data Neo4j");
+		this.joinSpringTransactions = joinSpringTransactions;
+	}
+
+	@Override
+	public Result execute(String cypher, Map<String, ?> parameters, boolean readOnly) {
+
+		if (this.joinSpringTransactions) {
+			Session session = SpringManagedSessions.getSession(this.sessionFactory);
+			if (session != null) {
+				return session.query(cypher, parameters);
+			}
+		}
+
+		AtomicReference<Session> threadSession = this.sessions.get();
+		Session session = threadSession.get();
+		if (session == null) {
+			session = this.sessionFactory.openSession();
+			threadSession.set(session);
+			this.threadSessions.add(threadSession);
+		}
+
+		try {
+			if (readOnly && this.autoCommitReads) {
+				return session.query(cypher, parameters, true);
+			}
+			return executeInTransaction(session, cypher, parameters, readOnly);
+		} catch (RuntimeException e) {
+			// A session left in an unknown state is not reused
+			threadSession.compareAndSet(session, null);
+			throw e;
+		} finally {
+			session.clear();
+		}
+
+	}
+
+	/**
+	 * Release the sessions kept for all threads. Threads executing statements afterwards
+	 * open a new session.
+	 */
+	@Override
+	public void destroy() {
+		for (AtomicReference<Session> threadSession : this.threadSessions) {
+			threadSession.set(null);
+		}
+		this.threadSessions.clear();
+		this.sessions.remove();
+	}
+
+	private Result executeInTransaction(Session session, String cypher, Map<String, ?> parameters,
+			boolean readOnly) {
+
+		Transaction transaction = session.beginTransaction(
+				readOnly ? Transaction.Type.READ_ONLY : Transaction.Type.READ_WRITE);
+
+		try {
+
+			Result result = session.query(cypher, parameters);
+
+			transaction.commit();
+
+			return result;
+
+		} catch (Exception e) {
+			String message = "Exception while executing cypher: '" + cypher + "'";
+			logger.error(message);
+			transaction.rollback();
+			throw new RuntimeException(message, e);
+		} finally {
+			transaction.close();
+		}
+
+	}
+
+	/**
+	 * Looks up the OGM session bound by Spring Data Neo4j's transaction manager. Kept in
+	 * a separate class so Spring Data Neo4j is only loaded when it is present.
+	 */
+	private static class SpringManagedSessions {
+
+		static Session getSession(SessionFactory sessionFactory) {
+			if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+				return null;
+			}
+			Object resource = TransactionSynchronizationManager.getResource(sessionFactory);
+			if (resource instanceof SessionHolder) {
+				return ((SessionHolder) resource).getSession();
+			}
+			return null;
+		}
+
+	}
+
+}
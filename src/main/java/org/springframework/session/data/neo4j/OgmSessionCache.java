@@ -0,0 +1,301 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.session.data.neo4j;
+
+import java.lang.reflect.Array;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.session.MapSession;
+import org.springframework.session.Session;
+import org.springframework.util.Assert;
+
+/**
+ * A bounded, JVM local near-cache of session state used by {@link OgmSessionRepository}
+ * to avoid reloading session nodes that have not changed since they were last read or
+ * written by this JVM.
+ * <p>
+ * Every entry remembers the {@code version} property of the node it was built from. Within
+ * the configured staleness window an entry is returned as is, after that it is revalidated
+ * by comparing its version to the one currently stored in the database. Entries are
+ * evicted in least recently used order once the maximum size is reached and dropped
+ * entirely once their time to live has elapsed.
+ * <p>
+ * Entries hold the attribute values in their stored form only, native values and the
+ * serialized bytes of all others. Every session handed out by the repository gets its own
+ * copies, deserialized once read, so no attribute object is shared between requests.
+ *
+ * @author Eric Spiegelberg
+ */
+public class OgmSessionCache {
+
+	/**
+	 * The default maximum number of cached sessions.
+	 */
+	public static final int DEFAULT_MAX_SIZE = 10000;
+
+	/**
+	 * The default time to live of a cached session.
+	 */
+	public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(5);
+
+	private final int maxSize;
+
+	private final long timeToLive;
+
+	private long stalenessWindow;
+
+	private final Map<String, Entry> entries;
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	/**
+	 * Create a new {@link OgmSessionCache} using {@link #DEFAULT_MAX_SIZE} and
+	 * {@link #DEFAULT_TIME_TO_LIVE}.
+	 */
+	public OgmSessionCache() {
+		this(DEFAULT_MAX_SIZE, DEFAULT_TIME_TO_LIVE);
+	}
+
+	/**
+	 * Create a new {@link OgmSessionCache} instance.
+	 * @param maxSize the maximum number of sessions to cache
+	 * @param timeToLive how long a session may stay cached after it was loaded
+	 */
+	public OgmSessionCache(int maxSize, Duration timeToLive) {
+		Assert.isTrue(maxSize > 0, "maxSize must be greater than 0");
+		Assert.notNull(timeToLive, "timeToLive must not be null");
+		this.maxSize = maxSize;
+		this.timeToLive = timeToLive.toMillis();
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				boolean evict = size() > OgmSessionCache.this.maxSize;
+				if (evict) {
+					OgmSessionCache.this.evictionCount.incrementAndGet();
+				}
+				return evict;
+			}
+
+		};
+	}
+
+	/**
+	 * Set the window during which a cached session is trusted without checking its
+	 * version against the database. The default of zero revalidates on every read.
+	 * @param stalenessWindow the staleness window
+	 */
+	public void setStalenessWindow(Duration stalenessWindow) {
+		Assert.notNull(stalenessWindow, "stalenessWindow must not be null");
+		this.stalenessWindow = stalenessWindow.toMillis();
+	}
+
+	/**
+	 * Return the number of reads served from the cache.
+	 * @return the hit count
+	 */
+	public long getHitCount() {
+		return this.hitCount.get();
+	}
+
+	/**
+	 * Return the number of reads that had to load the session from the database.
+	 * @return the miss count
+	 */
+	public long getMissCount() {
+		return this.missCount.get();
+	}
+
+	/**
+	 * Return the number of entries evicted because of the size limit or their time to
+	 * live.
+	 * @return the eviction count
+	 */
+	public long getEvictionCount() {
+		return this.evictionCount.get();
+	}
+
+	/**
+	 * Return the number of currently cached sessions.
+	 * @return the cache size
+	 */
+	public int size() {
+		synchronized (this.entries) {
+			return this.entries.size();
+		}
+	}
+
+	Entry get(String sessionId) {
+		synchronized (this.entries) {
+			Entry entry = this.entries.get(sessionId);
+			if (entry != null && entry.loadedAt + this.timeToLive < System.currentTimeMillis()) {
+				this.entries.remove(sessionId);
+				this.evictionCount.incrementAndGet();
+				return null;
+			}
+			return entry;
+		}
+	}
+
+	/**
+	 * Cache the given session state.
+	 * @param session the session the id and timestamps are taken from
+	 * @param version the version of the session node
+	 * @param nativeAttributes the attribute values stored as native properties
+	 * @param serializedAttributes the serialized form of all other attribute values
+	 */
+	void put(Session session, long version, Map<String, Object> nativeAttributes,
+			Map<String, byte[]> serializedAttributes) {
+		MapSession metadata = new MapSession(session.getId());
+		metadata.setCreationTime(session.getCreationTime());
+		metadata.setLastAccessedTime(session.getLastAccessedTime());
+		metadata.setMaxInactiveInterval(session.getMaxInactiveInterval());
+		Map<String, Object> attributes = new HashMap<>(nativeAttributes.size());
+		nativeAttributes.forEach((name, value) -> attributes.put(name, copyNativeValue(value)));
+		Entry entry = new Entry(metadata, version, attributes, new HashMap<>(serializedAttributes));
+		synchronized (this.entries) {
+			this.entries.put(session.getId(), entry);
+		}
+	}
+
+	/**
+	 * Native values are immutable apart from arrays, which are copied.
+	 */
+	private static Object copyNativeValue(Object value) {
+		if (value == null || !value.getClass().isArray()) {
+			return value;
+		}
+		int length = Array.getLength(value);
+		Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+		System.arraycopy(value, 0, copy, 0, length);
+		return copy;
+	}
+
+	void touch(String sessionId, Instant lastAccessedTime) {
+		synchronized (this.entries) {
+			Entry entry = this.entries.get(sessionId);
+			if (entry != null) {
+				entry.session.setLastAccessedTime(lastAccessedTime);
+			}
+		}
+	}
+
+	void invalidate(String sessionId) {
+		synchronized (this.entries) {
+			this.entries.remove(sessionId);
+		}
+	}
+
+	/**
+	 * Remove every cached session that has expired according to its cached state. A
+	 * session that is not expired locally cannot have been expired in the database
+	 * either, as the stored last accessed time is never older than the cached one.
+	 */
+	void invalidateExpired() {
+		synchronized (this.entries) {
+			Iterator<Entry> iterator = this.entries.values().iterator();
+			while (iterator.hasNext()) {
+				if (iterator.next().session.isExpired()) {
+					iterator.remove();
+				}
+			}
+		}
+	}
+
+	void recordHit() {
+		this.hitCount.incrementAndGet();
+	}
+
+	void recordMiss() {
+		this.missCount.incrementAndGet();
+	}
+
+	boolean requiresRevalidation(Entry entry) {
+		return entry.validatedAt + this.stalenessWindow <= System.currentTimeMillis();
+	}
+
+	/**
+	 * A cached copy of a session together with the node version it was built from.
+	 */
+	final class Entry {
+
+		private final MapSession session;
+
+		private final long version;
+
+		private final Map<String, Object> nativeAttributes;
+
+		/**
+		 * The serialized form of all other attribute values, never deserialized by the
+		 * cache itself.
+		 */
+		private final Map<String, byte[]> serializedAttributes;
+
+		private final long loadedAt;
+
+		private volatile long validatedAt;
+
+		Entry(MapSession session, long version, Map<String, Object> nativeAttributes,
+				Map<String, byte[]> serializedAttributes) {
+			this.session = session;
+			this.version = version;
+			this.nativeAttributes = nativeAttributes;
+			this.serializedAttributes = serializedAttributes;
+			this.loadedAt = System.currentTimeMillis();
+			this.validatedAt = this.loadedAt;
+		}
+
+		long getVersion() {
+			return this.version;
+		}
+
+		void revalidated() {
+			this.validatedAt = System.currentTimeMillis();
+		}
+
+		/**
+		 * Create a session with the cached id, timestamps and native attribute values.
+		 * Serialized values are left to the caller.
+		 */
+		MapSession copySession() {
+			MapSession session;
+			synchronized (OgmSessionCache.this.entries) {
+				session = new MapSession(this.session);
+			}
+			this.nativeAttributes.forEach((name, value) -> session.setAttribute(name, copyNativeValue(value)));
+			return session;
+		}
+
+		Map<String, byte[]> copySerializedAttributes() {
+			synchronized (OgmSessionCache.this.entries) {
+				return new HashMap<>(this.serializedAttributes);
+			}
+		}
+
+	}
+
+}
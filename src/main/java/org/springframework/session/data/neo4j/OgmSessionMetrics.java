@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.session.data.neo4j;
+
+/**
+ * Receives timings and counts of the operations performed by {@link OgmSessionRepository}.
+ * All methods do nothing by default.
+ *
+ * @author Eric Spiegelberg
+ * @see MicrometerOgmSessionMetrics
+ */
+public interface OgmSessionMetrics {
+
+	/**
+	 * An instance that records nothing.
+	 */
+	OgmSessionMetrics NONE = new OgmSessionMetrics() {
+	};
+
+	/**
+	 * The repository operations that are timed.
+	 */
+	enum Operation {
+
+		CREATE, UPDATE, GET, DELETE, BULK_DELETE, FIND_BY_PRINCIPAL_NAME, CLEANUP
+
+	}
+
+	/**
+	 * Record the duration of a repository operation.
+	 * @param operation the operation
+	 * @param durationNanos the duration in nanoseconds
+	 * @param success whether the operation completed without an exception
+	 */
+	default void recordOperation(Operation operation, long durationNanos, boolean success) {
+	}
+
+	/**
+	 * Record the size of a save that wrote to the database.
+	 * @param propertyCount the number of node properties written
+	 * @param serializedBytes the total size of the serialized attribute values written
+	 */
+	default void recordSave(int propertyCount, long serializedBytes) {
+	}
+
+	/**
+	 * Record the compression of a serialized attribute value.
+	 * @param uncompressedBytes the size of the value before compression
+	 * @param compressedBytes the size of the stored, compressed value
+	 * @param durationNanos the time spent compressing in nanoseconds
+	 */
+	default void recordCompression(int uncompressedBytes, int compressedBytes, long durationNanos) {
+	}
+
+	/**
+	 * Record that a session was found expired and deleted while being read.
+	 */
+	default void recordExpiredOnRead() {
+	}
+
+	/**
+	 * Record that a statement failed and its transaction was rolled back.
+	 */
+	default void recordRollback() {
+	}
+
+}
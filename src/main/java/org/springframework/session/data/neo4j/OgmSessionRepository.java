@@ -18,15 +18,25 @@ package org.springframework.session.data.neo4j;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -34,20 +44,24 @@ import org.neo4j.ogm.model.Property;
 import org.neo4j.ogm.model.Result;
 import org.neo4j.ogm.response.model.NodeModel;
 import org.neo4j.ogm.session.SessionFactory;
-import org.neo4j.ogm.transaction.Transaction;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.core.convert.ConversionService;
 import org.springframework.core.convert.TypeDescriptor;
 import org.springframework.core.convert.support.GenericConversionService;
-import org.springframework.core.serializer.support.DeserializingConverter;
-import org.springframework.core.serializer.support.SerializingConverter;
 import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
 import org.springframework.session.FindByIndexNameSessionRepository;
 import org.springframework.session.MapSession;
 import org.springframework.session.Session;
 import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
+import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 
 /**
@@ -59,9 +73,16 @@ import org.springframework.util.StringUtils;
  * @author Vedran Pavic
  */
 public class OgmSessionRepository implements
-		FindByIndexNameSessionRepository<OgmSessionRepository.OgmSession> {
+		FindByIndexNameSessionRepository<OgmSessionRepository.OgmSession>, InitializingBean, DisposableBean {
 
 	public static final String NOW = "now";
+	public static final String SESSION_IDS = "sessionIds";
+	public static final String PRINCIPAL_NAMES = "principalNames";
+	public static final String ROWS = "rows";
+	public static final String BATCH_SIZE = "batchSize";
+	public static final String LOCK_NAME = "lockName";
+	public static final String LOCK_OWNER = "owner";
+	public static final String LOCK_EXPIRES_AT = "expiresAt";
 	public static final String SESSION_ID = "sessionId";	
 	public static final String CREATION_TIME = "creationTime";
 	public static final String PRINCIPAL_NAME = "principalName";
@@ -69,6 +90,8 @@ public class OgmSessionRepository implements
 	public static final String ATTRIBUTE_KEY_PREFIX = "attribute_";
 	public static final String LAST_ACCESS_TIME = "lastAccessedTime";
 	public static final String MAX_INACTIVE_INTERVAL = "maxInactiveInterval";
+	public static final String VERSION = "version";
+	public static final String EXPIRY_TIME = "expiryTime";
 	
 	/**
 	 * The default node label used by Spring Session to store sessions.
@@ -77,18 +100,131 @@ public class OgmSessionRepository implements
 	
 	public static final String SPRING_SECURITY_CONTEXT = "SPRING_SECURITY_CONTEXT";
 
-	public static final String CREATE_SESSION_QUERY = "create (n:%LABEL% {nodeProperties})";
+	public static final String GET_SESSION_QUERY = "match (n:%LABEL%) where n.sessionId={sessionId} return n";
+	
+	public static final String GET_SESSION_VERSION_QUERY = "match (n:%LABEL%) where n.sessionId={sessionId} return n.version as version";
 
-	public static final String GET_SESSION_QUERY = "match (n:%LABEL%) where n.sessionId={sessionId} return n order by n.creationTime desc";
+	/**
+	 * Creates the node of a new session or updates the changed properties of an existing
+	 * one. The statement text is the same for every save so that Neo4j plans it once, a
+	 * {@code null} value in {@code nodeProperties} removes the property. The unique
+	 * constraint on the session id, created on startup whether or not the schema is
+	 * initialized, guarantees that concurrent saves never create a second node.
+	 */
+	public static final String SAVE_SESSION_QUERY = "merge (n:%LABEL% {sessionId:{sessionId}}) on create set n.creationTime={creationTime}, "
+			+ "n.principalName={principalName}, n.maxInactiveInterval={maxInactiveInterval} "
+			+ "set n += {nodeProperties}, n.version = coalesce(n.version, 0) + 1 return n.version as version";
 	
-	public static final String UPDATE_SESSION_QUERY = "match (n:%LABEL%) where n.sessionId={sessionId} set %PROPERTIES_TO_UPDATE%";
+	public static final String UPDATE_LAST_ACCESS_TIMES_QUERY = "unwind {rows} as row match (n:%LABEL%) where n.sessionId=row.sessionId "
+			+ "with n, case when n.lastAccessedTime > row.lastAccessedTime then n.lastAccessedTime else row.lastAccessedTime end as lastAccessedTime "
+			+ "set n.lastAccessedTime = lastAccessedTime, "
+			+ "n.expiryTime = case when n.maxInactiveInterval < 0 then null else lastAccessedTime + n.maxInactiveInterval end";
 	
 	public static final String DELETE_SESSION_QUERY = "match (n:%LABEL%) where n.sessionId={sessionId} detach delete n";
+
+	public static final String DELETE_SESSIONS_BY_ID_QUERY = "unwind {sessionIds} as sessionId match (n:%LABEL%) where n.sessionId=sessionId "
+			+ "detach delete n return sessionId";
+
+	public static final String DELETE_SESSIONS_BY_PRINCIPAL_NAME_QUERY = "match (n:%LABEL%) where n.principalName in {principalNames} "
+			+ "with n, n.sessionId as sessionId detach delete n return sessionId";
 	
-	public static final String LIST_SESSIONS_BY_PRINCIPAL_NAME_QUERY = "match (n:%LABEL%) where n.principalName={principalName} return n order by n.creationTime desc";
+	public static final String LIST_SESSIONS_BY_PRINCIPAL_NAME_QUERY = "match (n:%LABEL%) where n.principalName={principalName} "
+			+ "and (n.expiryTime is null or n.expiryTime > {now}) return n order by n.creationTime desc";
+
+	/**
+	 * Lists the sessions of a principal without their attributes.
+	 */
+	public static final String LIST_SESSION_METADATA_BY_PRINCIPAL_NAME_QUERY = "match (n:%LABEL%) where n.principalName={principalName} "
+			+ "and (n.expiryTime is null or n.expiryTime > {now}) return n.sessionId as sessionId, n.creationTime as creationTime, "
+			+ "n.lastAccessedTime as lastAccessedTime, n.maxInactiveInterval as maxInactiveInterval";
 
+	/**
+	 * Deletes a batch of expired sessions using the precomputed {@code expiryTime}
+	 * property, which allows the query to be backed by an index. Versions before
+	 * {@code expiryTime} existed update {@code lastAccessedTime} without it, so while they
+	 * still run during a rolling upgrade the stored value can be stale. Candidates are
+	 * therefore also checked against their last accessed time and inactive interval.
+	 */
 	public static final String DELETE_SESSIONS_BY_LAST_ACCESS_TIME_QUERY = 
-			"match (n:%LABEL%) where n.maxInactiveInterval < ({now} - n.lastAccessedTime) detach delete n";
+			"match (n:%LABEL%) where n.expiryTime < {now} and n.maxInactiveInterval >= 0 "
+			+ "and n.lastAccessedTime + n.maxInactiveInterval < {now} with n limit {batchSize} detach delete n";
+
+	/**
+	 * Computes {@code expiryTime} for session nodes written before the property existed.
+	 */
+	public static final String MIGRATE_EXPIRY_TIME_QUERY =
+			"match (n:%LABEL%) where not exists(n.expiryTime) and n.maxInactiveInterval >= 0 "
+			+ "with n limit {batchSize} set n.expiryTime = n.lastAccessedTime + n.maxInactiveInterval";
+
+	/**
+	 * The default maximum number of sessions deleted per cleanup transaction.
+	 */
+	public static final int DEFAULT_CLEANUP_BATCH_SIZE = 1000;
+
+	/**
+	 * The default number of buffered last accessed time updates that triggers a flush.
+	 */
+	public static final int DEFAULT_WRITE_BEHIND_MAX_BATCH_SIZE = 1000;
+
+	/**
+	 * Like {@link #SAVE_SESSION_QUERY}, but also moves the {@code HAS_SESSION}
+	 * relationship of the session to the node of its current principal. Used instead of
+	 * {@link #SAVE_SESSION_QUERY} when principal relationships are enabled and the
+	 * principal may have changed.
+	 */
+	public static final String SAVE_SESSION_WITH_PRINCIPAL_QUERY = "merge (n:%LABEL% {sessionId:{sessionId}}) on create set n.creationTime={creationTime}, "
+			+ "n.principalName={principalName}, n.maxInactiveInterval={maxInactiveInterval} "
+			+ "set n += {nodeProperties}, n.version = coalesce(n.version, 0) + 1 "
+			+ "with n optional match (n)<-[r:HAS_SESSION]-(:%LABEL%_PRINCIPAL) delete r "
+			+ "with distinct n foreach (name in case when {principalName} is null then [] else [{principalName}] end | "
+			+ "merge (p:%LABEL%_PRINCIPAL {name:name}) merge (p)-[:HAS_SESSION]->(n)) "
+			+ "return n.version as version";
+
+	public static final String LIST_SESSIONS_BY_PRINCIPAL_RELATIONSHIP_QUERY = "match (:%LABEL%_PRINCIPAL {name:{principalName}})-[:HAS_SESSION]->(n:%LABEL%) "
+			+ "where n.expiryTime is null or n.expiryTime > {now} return n order by n.creationTime desc";
+
+	public static final String DELETE_ORPHANED_PRINCIPALS_QUERY = "match (p:%LABEL%_PRINCIPAL) where p.name in {principalNames} "
+			+ "and not (p)-[:HAS_SESSION]->() delete p";
+
+	/**
+	 * Links session nodes written without a principal relationship to their principal.
+	 */
+	public static final String LINK_PRINCIPALS_QUERY = "match (n:%LABEL%) where exists(n.principalName) "
+			+ "and not (n)<-[:HAS_SESSION]-(:%LABEL%_PRINCIPAL) with n limit {batchSize} "
+			+ "merge (p:%LABEL%_PRINCIPAL {name:n.principalName}) merge (p)-[:HAS_SESSION]->(n)";
+
+	public static final String LIST_SESSION_METADATA_BY_PRINCIPAL_RELATIONSHIP_QUERY = "match (:%LABEL%_PRINCIPAL {name:{principalName}})-[:HAS_SESSION]->(n:%LABEL%) "
+			+ "where n.expiryTime is null or n.expiryTime > {now} return n.sessionId as sessionId, n.creationTime as creationTime, "
+			+ "n.lastAccessedTime as lastAccessedTime, n.maxInactiveInterval as maxInactiveInterval";
+
+	public static final String CREATE_SESSION_ID_CONSTRAINT_QUERY = "create constraint on (n:%LABEL%) assert n.sessionId is unique";
+
+	public static final String CREATE_PRINCIPAL_NAME_INDEX_QUERY = "create index on :%LABEL%(principalName)";
+
+	public static final String CREATE_EXPIRY_TIME_INDEX_QUERY = "create index on :%LABEL%(expiryTime)";
+
+	/**
+	 * Takes over or renews the named lock if it is free, expired or already owned by the
+	 * caller. The first {@code set} locks the node so that the ownership check sees the
+	 * latest committed state. Returns a row only if the lock was acquired.
+	 */
+	public static final String ACQUIRE_LOCK_QUERY = "merge (l:%LABEL%_LOCK {name:{lockName}}) set l.lastAttempt = {now} "
+			+ "with l where l.owner is null or l.owner = {owner} or l.expiresAt < {now} "
+			+ "set l.owner = {owner}, l.expiresAt = {expiresAt} return l.owner as owner";
+
+	public static final String CREATE_LOCK_NAME_CONSTRAINT_QUERY = "create constraint on (l:%LABEL%_LOCK) assert l.name is unique";
+
+	public static final String CREATE_PRINCIPAL_NAME_CONSTRAINT_QUERY = "create constraint on (p:%LABEL%_PRINCIPAL) assert p.name is unique";
+
+	/**
+	 * The name of the lock guarding {@link #cleanUpExpiredSessions()}.
+	 */
+	public static final String CLEANUP_LOCK_NAME = "cleanup";
+
+	/**
+	 * The default time a cleanup lock is held for before other instances may take it over.
+	 */
+	public static final Duration DEFAULT_CLEANUP_LOCK_TIME_TO_LIVE = Duration.ofMinutes(10);
 
 	private static final Log logger = LogFactory.getLog(OgmSessionRepository.class);
 	
@@ -96,23 +232,57 @@ public class OgmSessionRepository implements
 
 	private final SessionFactory sessionFactory;
 	
+	private CypherExecutionStrategy executionStrategy;
+	
 	/**
 	 * The name of label used by Spring Session to store sessions.
 	 */
 	private String label = DEFAULT_LABEL;
 	
-	private String createSessionQuery;
+	private String saveSessionQuery;
 	
 	private String getSessionQuery;
 	
-	private String updateSessionQuery;
+	private String getSessionVersionQuery;
+	
+	private String updateLastAccessTimesQuery;
 	
 	private String deleteSessionQuery;
+
+	private String deleteSessionsByIdQuery;
+
+	private String deleteSessionsByPrincipalNameQuery;
+
+	private String deleteOrphanedPrincipalsQuery;
 	
 	private String listSessionsByPrincipalNameQuery;
 
+	private String listSessionMetadataByPrincipalNameQuery;
+
+	private String saveSessionWithPrincipalQuery;
+
+	private String listSessionsByPrincipalRelationshipQuery;
+
+	private String listSessionMetadataByPrincipalRelationshipQuery;
+
 	private String deleteSessionsByLastAccessTimeQuery;
 	
+	private String migrateExpiryTimeQuery;
+
+	private String linkPrincipalsQuery;
+	
+	private String acquireLockQuery;
+	
+	/**
+	 * Whether all session nodes have been found to carry an {@code expiryTime}.
+	 */
+	private volatile boolean expiryTimeMigrated;
+	
+	/**
+	 * Whether all session nodes with a principal have been found to be linked to it.
+	 */
+	private volatile boolean principalsLinked;
+	
 	/**
 	 * If non-null, this value is used to override the default value for
 	 * {@link OgmSession#setMaxInactiveInterval(Duration)}.
@@ -121,6 +291,67 @@ public class OgmSessionRepository implements
 
 	private ConversionService conversionService;
 
+	/**
+	 * If non-null, sessions are cached locally and revalidated against their node version.
+	 */
+	private OgmSessionCache sessionCache;
+
+	/**
+	 * If true, saves that only change the last accessed time are buffered and flushed in
+	 * batches.
+	 */
+	private boolean writeBehind;
+
+	/**
+	 * If true, sessions found by principal name are returned without their attributes.
+	 */
+	private boolean findByPrincipalNameMetadataOnly;
+
+	/**
+	 * If true, sessions are linked to a node per principal.
+	 */
+	private boolean principalRelationships;
+
+	private int writeBehindMaxBatchSize = DEFAULT_WRITE_BEHIND_MAX_BATCH_SIZE;
+
+	/**
+	 * The amount of time the last accessed time has to move before a save that changes
+	 * nothing else is written.
+	 */
+	private Duration touchThreshold = Duration.ZERO;
+
+	private int cleanupBatchSize = DEFAULT_CLEANUP_BATCH_SIZE;
+
+	private Duration cleanupBatchPause = Duration.ZERO;
+
+	private Duration cleanupTimeBudget = Duration.ZERO;
+
+	private Duration cleanupJitter = Duration.ZERO;
+
+	/**
+	 * If true, only the instance holding the cleanup lock deletes expired sessions.
+	 */
+	private boolean cleanupLock;
+
+	private Duration cleanupLockTimeToLive = DEFAULT_CLEANUP_LOCK_TIME_TO_LIVE;
+
+	private String lockOwner = UUID.randomUUID().toString();
+
+	/**
+	 * If true, the constraint and indexes used by the session queries are created on
+	 * startup.
+	 */
+	private boolean initializeSchema;
+
+	private final ConcurrentMap<String, Long> pendingLastAccessTimes = new ConcurrentHashMap<>();
+
+	private OgmSessionMetrics metrics = OgmSessionMetrics.NONE;
+
+	/**
+	 * If non-null, serialized attribute values above its threshold are compressed.
+	 */
+	private AttributeCompressor attributeCompressor;
+
 	/**
 	 * Create a new {@link OgmSessionRepository} instance which uses the
 	 * provided {@link JdbcOperations} to manage sessions.
@@ -130,6 +361,24 @@ public class OgmSessionRepository implements
 	public OgmSessionRepository(SessionFactory sessionFactory) {
 		Assert.notNull(sessionFactory, "Property 'sessionFactory' must not be null");
 		this.sessionFactory = sessionFactory;
+		this.executionStrategy = new OgmCypherExecutionStrategy(sessionFactory);
+		this.conversionService = createDefaultConversionService();
+		prepareQueries();
+	}
+
+	/**
+	 * Create a new {@link OgmSessionRepository} instance which runs its statements through
+	 * the provided {@link CypherExecutionStrategy}. Intended for subclasses that do not
+	 * use OGM's {@link SessionFactory}.
+	 * @param sessionFactory the {@link SessionFactory} the strategy uses, may be
+	 * {@code null} if it does not use OGM
+	 * @param executionStrategy the {@link CypherExecutionStrategy} to use
+	 */
+	protected OgmSessionRepository(SessionFactory sessionFactory,
+			CypherExecutionStrategy executionStrategy) {
+		Assert.notNull(executionStrategy, "executionStrategy must not be null");
+		this.sessionFactory = sessionFactory;
+		this.executionStrategy = executionStrategy;
 		this.conversionService = createDefaultConversionService();
 		prepareQueries();
 	}
@@ -145,12 +394,12 @@ public class OgmSessionRepository implements
 	}
 
 	/**
-	 * Set the custom Cypher query used to create the session.
-	 * @param createSessionQuery the Cypher query string
+	 * Set the custom Cypher query used to create or update the session.
+	 * @param saveSessionQuery the Cypher query string
 	 */
-	public void setCreateSessionQuery(String createSessionQuery) {
-		Assert.hasText(createSessionQuery, "createSessionQuery must not be empty");
-		this.createSessionQuery = createSessionQuery;
+	public void setSaveSessionQuery(String saveSessionQuery) {
+		Assert.hasText(saveSessionQuery, "saveSessionQuery must not be empty");
+		this.saveSessionQuery = saveSessionQuery;
 	}
 	
 	/**
@@ -163,12 +412,22 @@ public class OgmSessionRepository implements
 	}
 	
 	/**
-	 * Set the custom Cypher query used to update the session.
-	 * @param updateSessionQuery the Cypher query string
+	 * Set the custom Cypher query used to retrieve the version of the session. Used to
+	 * revalidate sessions held in the {@link OgmSessionCache}.
+	 * @param getSessionVersionQuery the Cypher query string
+	 */
+	public void setGetSessionVersionQuery(String getSessionVersionQuery) {
+		Assert.hasText(getSessionVersionQuery, "getSessionVersionQuery must not be empty");
+		this.getSessionVersionQuery = getSessionVersionQuery;
+	}
+	
+	/**
+	 * Set the custom Cypher query used to flush buffered last accessed times.
+	 * @param updateLastAccessTimesQuery the Cypher query string
 	 */
-	public void setUpdateSessionQuery(String updateSessionQuery) {
-		Assert.hasText(updateSessionQuery, "updateSessionQuery must not be empty");
-		this.updateSessionQuery = updateSessionQuery;
+	public void setUpdateLastAccessTimesQuery(String updateLastAccessTimesQuery) {
+		Assert.hasText(updateLastAccessTimesQuery, "updateLastAccessTimesQuery must not be empty");
+		this.updateLastAccessTimesQuery = updateLastAccessTimesQuery;
 	}
 	
 	/**
@@ -189,6 +448,16 @@ public class OgmSessionRepository implements
 		this.listSessionsByPrincipalNameQuery = listSessionsByPrincipalNameQuery;
 	}
 
+	/**
+	 * Set the custom Cypher query used to retrieve the sessions by principal name without
+	 * their attributes, see {@link #setFindByPrincipalNameMetadataOnly(boolean)}.
+	 * @param listSessionMetadataByPrincipalNameQuery the Cypher query string
+	 */
+	public void setListSessionMetadataByPrincipalNameQuery(String listSessionMetadataByPrincipalNameQuery) {
+		Assert.hasText(listSessionMetadataByPrincipalNameQuery, "Query must not be empty");
+		this.listSessionMetadataByPrincipalNameQuery = listSessionMetadataByPrincipalNameQuery;
+	}
+
 	/**
 	 * Set the custom Cypher query used to delete the sessions by last access time.
 	 * @param deleteSessionsByLastAccessTimeQuery the Cypher query string
@@ -217,6 +486,264 @@ public class OgmSessionRepository implements
 		this.conversionService = conversionService;
 	}
 
+	/**
+	 * Sets the {@link SessionAttributeSerializer} used to write attribute values that
+	 * cannot be stored as native properties, replacing the {@link ConversionService}.
+	 * Values written with Java serialization remain readable.
+	 * @param attributeSerializer the serializer to use
+	 */
+	public void setAttributeSerializer(SessionAttributeSerializer attributeSerializer) {
+		Assert.notNull(attributeSerializer, "attributeSerializer must not be null");
+		this.conversionService = new SessionAttributeCodec(attributeSerializer)
+				.createConversionService();
+	}
+
+	/**
+	 * Sets the {@link AttributeCompressor} used to compress large serialized attribute
+	 * values. By default, values are not compressed. Compressed values are only
+	 * recognized while a compressor is configured, so to stop compressing without losing
+	 * access to values already stored compressed, configure a compressor with a threshold
+	 * of {@link Integer#MAX_VALUE} instead.
+	 * @param attributeCompressor the compressor to use or {@code null} to disable
+	 * compression
+	 */
+	public void setAttributeCompressor(AttributeCompressor attributeCompressor) {
+		this.attributeCompressor = attributeCompressor;
+	}
+
+	/**
+	 * Sets the {@link CypherExecutionStrategy} used to run all statements. Defaults to an
+	 * {@link OgmCypherExecutionStrategy} for the repository's {@link SessionFactory}.
+	 * @param executionStrategy the execution strategy to use
+	 */
+	public void setExecutionStrategy(CypherExecutionStrategy executionStrategy) {
+		Assert.notNull(executionStrategy, "executionStrategy must not be null");
+		this.executionStrategy = executionStrategy;
+	}
+
+	/**
+	 * Sets the {@link OgmSessionCache} used to serve {@link #getSession(String)} without
+	 * reloading unchanged sessions. By default no cache is used.
+	 * @param sessionCache the cache to use, or {@code null} to disable caching
+	 */
+	public void setSessionCache(OgmSessionCache sessionCache) {
+		this.sessionCache = sessionCache;
+	}
+
+	/**
+	 * Set the maximum number of expired sessions deleted in a single transaction by
+	 * {@link #cleanUpExpiredSessions()}. The default is {@link #DEFAULT_CLEANUP_BATCH_SIZE}.
+	 * @param cleanupBatchSize the cleanup batch size
+	 */
+	public void setCleanupBatchSize(int cleanupBatchSize) {
+		Assert.isTrue(cleanupBatchSize > 0, "cleanupBatchSize must be greater than 0");
+		this.cleanupBatchSize = cleanupBatchSize;
+	}
+
+	/**
+	 * Set the pause between two cleanup batches, giving the database room to serve other
+	 * transactions. The default is no pause.
+	 * @param cleanupBatchPause the pause between batches
+	 */
+	public void setCleanupBatchPause(Duration cleanupBatchPause) {
+		Assert.notNull(cleanupBatchPause, "cleanupBatchPause must not be null");
+		this.cleanupBatchPause = cleanupBatchPause;
+	}
+
+	/**
+	 * Set the time after which a cleanup run stops starting new batches, including those
+	 * of the one-off migrations of existing nodes. Remaining work is done by the next run.
+	 * The default of zero means no limit.
+	 * @param cleanupTimeBudget the time budget of a cleanup run
+	 */
+	public void setCleanupTimeBudget(Duration cleanupTimeBudget) {
+		Assert.notNull(cleanupTimeBudget, "cleanupTimeBudget must not be null");
+		this.cleanupTimeBudget = cleanupTimeBudget;
+	}
+
+	/**
+	 * Set the maximum random delay added before each cleanup run, spreading the load of
+	 * instances sharing the same cron expression. The default is no delay.
+	 * @param cleanupJitter the maximum delay
+	 */
+	public void setCleanupJitter(Duration cleanupJitter) {
+		Assert.notNull(cleanupJitter, "cleanupJitter must not be null");
+		this.cleanupJitter = cleanupJitter;
+	}
+
+	/**
+	 * Set whether expired sessions are only cleaned up by the instance holding a lease
+	 * stored as a node labelled with the session label suffixed by {@code _LOCK}. The
+	 * lease is renewed by its owner on every run and can be taken over by other
+	 * instances once it has not been renewed for the lock time to live. The unique
+	 * constraint on the lock name that makes the lease exclusive is created on startup,
+	 * whether or not the schema is initialized. The default is false, meaning every
+	 * instance cleans up.
+	 * @param cleanupLock true to elect a single instance for the cleanup
+	 */
+	public void setCleanupLock(boolean cleanupLock) {
+		this.cleanupLock = cleanupLock;
+	}
+
+	/**
+	 * Set how long the cleanup lock is held after it was last acquired. The default is
+	 * {@link #DEFAULT_CLEANUP_LOCK_TIME_TO_LIVE}.
+	 * @param cleanupLockTimeToLive the lock time to live
+	 */
+	public void setCleanupLockTimeToLive(Duration cleanupLockTimeToLive) {
+		Assert.notNull(cleanupLockTimeToLive, "cleanupLockTimeToLive must not be null");
+		this.cleanupLockTimeToLive = cleanupLockTimeToLive;
+	}
+
+	/**
+	 * Set the identifier this instance uses as lock owner. Defaults to a random UUID.
+	 * @param lockOwner the lock owner
+	 */
+	public void setLockOwner(String lockOwner) {
+		Assert.hasText(lockOwner, "lockOwner must not be empty");
+		this.lockOwner = lockOwner;
+	}
+
+	/**
+	 * Set whether a unique constraint on {@code sessionId} and indexes on
+	 * {@code principalName} and {@code expiryTime} are created for the configured label
+	 * when the repository is initialized. The default is false, in which case only the
+	 * unique constraints the save and lock statements rely on are created.
+	 * @param initializeSchema true to create the schema on startup
+	 * @see #initializeSchema()
+	 */
+	public void setInitializeSchema(boolean initializeSchema) {
+		this.initializeSchema = initializeSchema;
+	}
+
+	/**
+	 * Set whether saves that only change the last accessed time of a session are buffered
+	 * in memory and written in batches by {@link #flushLastAccessTimes()} instead of
+	 * running one update per save. Buffered updates are lost if the JVM terminates
+	 * abnormally, which at worst lets a session expire early. The default is false.
+	 * @param writeBehind true to enable write-behind of last accessed times
+	 */
+	public void setWriteBehind(boolean writeBehind) {
+		this.writeBehind = writeBehind;
+	}
+
+	/**
+	 * Set whether {@link #findByIndexNameAndIndexValue(String, String)} only reads the id
+	 * and timestamps of the sessions it finds. The attributes of such a session are loaded
+	 * with an additional query once any of them is accessed. This keeps listings of the
+	 * sessions of a principal cheap when their attributes are not needed. The default is
+	 * false.
+	 * @param findByPrincipalNameMetadataOnly true to load attributes on demand
+	 */
+	public void setFindByPrincipalNameMetadataOnly(boolean findByPrincipalNameMetadataOnly) {
+		this.findByPrincipalNameMetadataOnly = findByPrincipalNameMetadataOnly;
+	}
+
+	/**
+	 * Set whether every session node is linked to a node of its principal, labelled with
+	 * the session label suffixed by {@code _PRINCIPAL}, through a {@code HAS_SESSION}
+	 * relationship. The relationship is maintained whenever a save may change the
+	 * principal. Sessions saved before this was enabled are linked in batches by the
+	 * next {@link #cleanUpExpiredSessions() cleanup} of this instance. Only then does
+	 * {@link #findByIndexNameAndIndexValue(String, String)} expand the relationship
+	 * instead of matching the {@code principalName} property. The default is false.
+	 * @param principalRelationships true to link sessions to principal nodes
+	 */
+	public void setPrincipalRelationships(boolean principalRelationships) {
+		this.principalRelationships = principalRelationships;
+		this.principalsLinked = false;
+	}
+
+	/**
+	 * Set the number of buffered last accessed time updates that triggers an immediate
+	 * flush. The default is {@link #DEFAULT_WRITE_BEHIND_MAX_BATCH_SIZE}.
+	 * @param writeBehindMaxBatchSize the maximum number of buffered updates
+	 */
+	public void setWriteBehindMaxBatchSize(int writeBehindMaxBatchSize) {
+		Assert.isTrue(writeBehindMaxBatchSize > 0, "writeBehindMaxBatchSize must be greater than 0");
+		this.writeBehindMaxBatchSize = writeBehindMaxBatchSize;
+	}
+
+	/**
+	 * Set how far the last accessed time of a session has to move past the stored value
+	 * before a save that changes nothing else is written to the database. Sessions may
+	 * expire up to this amount of time early, so it should be well below the maximum
+	 * inactive interval. The default of zero writes every change.
+	 * @param touchThreshold the touch threshold
+	 */
+	public void setTouchThreshold(Duration touchThreshold) {
+		Assert.notNull(touchThreshold, "touchThreshold must not be null");
+		this.touchThreshold = touchThreshold;
+	}
+
+	/**
+	 * Set the {@link OgmSessionMetrics} receiving operation timings and counts. By
+	 * default, nothing is recorded.
+	 * @param metrics the metrics to use
+	 */
+	public void setMetrics(OgmSessionMetrics metrics) {
+		Assert.notNull(metrics, "metrics must not be null");
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Returns the {@link OgmSessionCache} in use, which exposes the cache statistics.
+	 * @return the session cache or {@code null} if caching is disabled
+	 */
+	public OgmSessionCache getSessionCache() {
+		return this.sessionCache;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		if (this.initializeSchema) {
+			initializeSchema();
+		}
+		else {
+			// Merges only match a single node with the constraints, whatever the schema setting
+			createSchemaElement(getQuery(CREATE_SESSION_ID_CONSTRAINT_QUERY), "unique constraint on " + SESSION_ID);
+			if (this.cleanupLock) {
+				createSchemaElement(getQuery(CREATE_LOCK_NAME_CONSTRAINT_QUERY), "unique lock name constraint");
+			}
+			if (this.principalRelationships) {
+				createSchemaElement(getQuery(CREATE_PRINCIPAL_NAME_CONSTRAINT_QUERY), "unique principal name constraint");
+			}
+		}
+	}
+
+	/**
+	 * Create the unique constraint on {@code sessionId} and the indexes on
+	 * {@code principalName} and {@code expiryTime} for the configured label. Schema
+	 * elements that already exist are left untouched, so this is safe to call on every
+	 * startup. A constraint that cannot be created, for example because duplicate
+	 * session nodes exist, is logged and skipped.
+	 */
+	public void initializeSchema() {
+		createSchemaElement(getQuery(CREATE_SESSION_ID_CONSTRAINT_QUERY), "unique constraint on " + SESSION_ID);
+		createSchemaElement(getQuery(CREATE_PRINCIPAL_NAME_INDEX_QUERY), "index on " + PRINCIPAL_NAME);
+		createSchemaElement(getQuery(CREATE_EXPIRY_TIME_INDEX_QUERY), "index on " + EXPIRY_TIME);
+		if (this.cleanupLock) {
+			createSchemaElement(getQuery(CREATE_LOCK_NAME_CONSTRAINT_QUERY), "unique lock name constraint");
+		}
+		if (this.principalRelationships) {
+			createSchemaElement(getQuery(CREATE_PRINCIPAL_NAME_CONSTRAINT_QUERY), "unique principal name constraint");
+		}
+	}
+
+	private void createSchemaElement(String cypher, String description) {
+		try {
+			Result result = executeCypher(cypher, Collections.emptyMap());
+			if (result != null && (result.queryStatistics().getConstraintsAdded() > 0
+					|| result.queryStatistics().getIndexesAdded() > 0)) {
+				logger.info("Created " + description + " for label '" + this.label + "'");
+			} else if (logger.isDebugEnabled()) {
+				logger.debug("Found existing " + description + " for label '" + this.label + "'");
+			}
+		} catch (RuntimeException e) {
+			logger.warn("Unable to create " + description + " for label '" + this.label + "'", e);
+		}
+	}
+
 	public OgmSession createSession() {
 		OgmSession session = new OgmSession();
 		if (this.defaultMaxInactiveInterval != null) {
@@ -227,19 +754,107 @@ public class OgmSessionRepository implements
 	
 	public void save(final OgmSession session) {
 		
+		if (!requiresSave(session)) {
+			return;
+		}
+		
+		if (this.writeBehind && session.isTouchOnly()) {
+			bufferLastAccessTime(session);
+			session.clearChangeFlags();
+			return;
+		}
+		
+		// A full update writes the current last accessed time anyway
+		this.pendingLastAccessTimes.remove(session.getOriginalId());
+		
+		Long version = timed(session.isNew() ? OgmSessionMetrics.Operation.CREATE : OgmSessionMetrics.Operation.UPDATE, () -> {
+			
+			Statement statement = createSaveStatement(session);
+			Result result = executeCypher(statement.getCypher(), statement.getParameters());
+			
+			if (this.metrics != OgmSessionMetrics.NONE) {
+				recordSave(getNodeProperties(statement));
+			}
+			
+			if (this.sessionCache != null) {
+				if (session.isSessionIdChanged()) {
+					this.sessionCache.invalidate(session.getOriginalId());
+				}
+				return session.isNew() ? Long.valueOf(1L) : readVersion(result);
+			}
+			
+			return null;
+		});
+
+		session.clearChangeFlags();
+		
+		if (this.sessionCache != null) {
+			if (version != null && session.isAttributesLoaded()) {
+				// Cache the stored form of the attributes, without deserializing lazy values
+				cacheSession(session.delegate, version, session.serializedAttributes);
+			} else {
+				this.sessionCache.invalidate(session.getId());
+			}
+		}
+	}
+
+	private static Map<String, Object> getNodeProperties(Statement statement) {
+		return getNodeProperties(statement.getParameters());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> getNodeProperties(Map<String, Object> parameters) {
+		return (Map<String, Object>) parameters.get(NODE_PROPERTEIS);
+	}
+
+	private void recordSave(Map<String, Object> properties) {
+		long serializedBytes = 0;
+		for (Object value : properties.values()) {
+			if (value instanceof byte[]) {
+				serializedBytes += ((byte[]) value).length;
+			}
+		}
+		this.metrics.recordSave(properties.size(), serializedBytes);
+	}
+
+	/**
+	 * Whether the given session has changes that have to be written, taking the touch
+	 * threshold into account.
+	 */
+	boolean requiresSave(OgmSession session) {
+		if (!session.hasChanges()) {
+			return false;
+		}
+		return !session.isTouchOnly() || session.isLastAccessedTimeMoved(this.touchThreshold);
+	}
+
+	/**
+	 * Create the statement that creates the node of a new session or writes the changes
+	 * of an existing one.
+	 */
+	Statement createSaveStatement(OgmSession session) {
+		
 		Map<String, Object> nodeProperties = new HashMap<>();
-		nodeProperties.put(SESSION_ID, session.getId());		
-		nodeProperties.put(PRINCIPAL_NAME, session.getPrincipalName());
+		// Only write what changed, an unchanged principal name also spares its index entry
+		if (session.isNew() || session.isPrincipalChanged()) {
+			nodeProperties.put(PRINCIPAL_NAME, session.getPrincipalName());
+		}
 		nodeProperties.put(LAST_ACCESS_TIME, session.getLastAccessedTime().toEpochMilli());
-		nodeProperties.put(MAX_INACTIVE_INTERVAL, session.getMaxInactiveInterval().toMillis());
+		if (session.isNew() || session.isMaxInactiveIntervalChanged()) {
+			nodeProperties.put(MAX_INACTIVE_INTERVAL, session.getMaxInactiveInterval().toMillis());
+		}
+		nodeProperties.put(EXPIRY_TIME, getExpiryTime(session));
+		
+		Map<String, Object> parameters = new HashMap<>(5);
+		parameters.put(SESSION_ID, session.getOriginalId());
+		parameters.put(CREATION_TIME, session.getCreationTime().toEpochMilli());
+		// Always passed for the create branch, a stale save may recreate a deleted node
+		parameters.put(PRINCIPAL_NAME, session.getPrincipalName());
+		parameters.put(MAX_INACTIVE_INTERVAL, session.getMaxInactiveInterval().toMillis());
+		parameters.put(NODE_PROPERTEIS, nodeProperties);
 		
 		if (session.isNew()) {
 
-			Map<String, Object> parameters = new HashMap<>(1);			
-			parameters.put(NODE_PROPERTEIS, nodeProperties);
-			
-			nodeProperties.put(CREATION_TIME, session.getCreationTime().toEpochMilli());
-			
 			for (String attributeName : session.getAttributeNames()) {
 				
 				Optional<Object> attributeValue = session.getAttribute(attributeName);
@@ -251,7 +866,9 @@ public class OgmSessionRepository implements
 					
 					boolean requiresSerialization = requiresSerialization(value);					
 					if (requiresSerialization) {
-						value = serialize(value);					
+						byte[] serializedValue = convertToBytes(value);
+						session.serializedValueWritten(attributeName, serializedValue);
+						value = compress(serializedValue);
 					}
 					
 					key = processAttributeName(key, true);
@@ -263,107 +880,445 @@ public class OgmSessionRepository implements
 
 			}
 
-			executeCypher(createSessionQuery, parameters);
+			return createSaveStatement(session, parameters);
 			
-		} else {
+		}
 
-			Map<String, Object> delta = session.getDelta();
+		Map<String, Object> delta = session.getDelta();
 
-			for (final Map.Entry<String, Object> entry : delta.entrySet()) {
+		for (final Map.Entry<String, Object> entry : delta.entrySet()) {
 
-				String key = ATTRIBUTE_KEY_PREFIX + entry.getKey();
-				Object value = entry.getValue();
+			String key = ATTRIBUTE_KEY_PREFIX + entry.getKey();
+			Object value = entry.getValue();
 
-				boolean requiresSerialization = requiresSerialization(value);					
-				if (requiresSerialization) {
-					value = serialize(value);					
+			boolean requiresSerialization = requiresSerialization(value);					
+			if (requiresSerialization) {
+				// Compared before compressing, an unchanged value is never compressed
+				byte[] serializedValue = convertToBytes(value);
+				boolean unchanged = session.isSerializedValueUnchanged(entry.getKey(), serializedValue);
+				session.serializedValueWritten(entry.getKey(), serializedValue);
+				if (unchanged) {
+					// Re-set to an equal value, the stored bytes are still current
+					continue;
 				}
+				value = compress(serializedValue);
+			}
 
-				key = processAttributeName(key, true);
-				value = processAttributeValue(value, true);
-				
-				nodeProperties.put(key, value);
+			key = processAttributeName(key, true);
+			value = processAttributeValue(value, true);
+			
+			nodeProperties.put(key, value);
 
-			}
+		}
 
-			String suffix = buildQuerySuffix(nodeProperties);
-			String updateSessionCypher = updateSessionQuery.replace("%PROPERTIES_TO_UPDATE%", suffix);
+		if (session.isSessionIdChanged()) {
+			// Rotating the id only rewrites the id, the attributes stay in place
+			nodeProperties.put(SESSION_ID, session.getId());
+		}
 
-			executeCypher(updateSessionCypher, nodeProperties);
+		// A null value removes the property
+		for (String attributeName : session.getRemovedAttributes()) {
+			nodeProperties.put(processAttributeName(ATTRIBUTE_KEY_PREFIX + attributeName, true), null);
 		}
 
-		session.clearChangeFlags();
+		return createSaveStatement(session, parameters);
+	}
+
+	private Statement createSaveStatement(OgmSession session, Map<String, Object> parameters) {
+		if (this.principalRelationships && (session.isNew() || session.isPrincipalChanged())) {
+			return new Statement(this.saveSessionWithPrincipalQuery, parameters);
+		}
+		return new Statement(this.saveSessionQuery, parameters);
+	}
+
+	Statement createGetSessionStatement(String sessionId) {
+		Map<String, Object> parameters = new HashMap<>(1);
+		parameters.put(SESSION_ID, sessionId);
+		return new Statement(this.getSessionQuery, parameters);
+	}
+
+	Statement createDeleteStatement(String sessionId) {
+		Map<String, Object> parameters = new HashMap<>(1);
+		parameters.put(SESSION_ID, sessionId);
+		return new Statement(this.deleteSessionQuery, parameters);
+	}
+
+	/**
+	 * Returns the epoch millisecond at which the session expires, or {@code null} if it
+	 * never expires. A {@code null} value removes the property on update.
+	 */
+	private static Long getExpiryTime(Session session) {
+		Duration maxInactiveInterval = session.getMaxInactiveInterval();
+		if (maxInactiveInterval.isNegative()) {
+			return null;
+		}
+		return session.getLastAccessedTime().toEpochMilli() + maxInactiveInterval.toMillis();
+	}
+
+	private void bufferLastAccessTime(OgmSession session) {
+		
+		this.pendingLastAccessTimes.merge(session.getId(),
+				session.getLastAccessedTime().toEpochMilli(), Math::max);
+		
+		if (this.sessionCache != null) {
+			this.sessionCache.touch(session.getId(), session.getLastAccessedTime());
+		}
+		
+		if (this.pendingLastAccessTimes.size() >= this.writeBehindMaxBatchSize) {
+			flushLastAccessTimes();
+		}
+	}
+
+	/**
+	 * Write all buffered last accessed times in a single statement. Runs periodically,
+	 * before expired sessions are cleaned up and when the repository is destroyed.
+	 */
+	@Scheduled(fixedDelayString = "${spring.session.neo4j.write-behind.flush-interval:1000}")
+	public void flushLastAccessTimes() {
+		
+		if (this.pendingLastAccessTimes.isEmpty()) {
+			return;
+		}
+		
+		List<Map<String, Object>> rows = new ArrayList<>(this.pendingLastAccessTimes.size());
+		for (String sessionId : this.pendingLastAccessTimes.keySet()) {
+			Long lastAccessedTime = this.pendingLastAccessTimes.remove(sessionId);
+			if (lastAccessedTime != null) {
+				Map<String, Object> row = new HashMap<>(2);
+				row.put(SESSION_ID, sessionId);
+				row.put(LAST_ACCESS_TIME, lastAccessedTime);
+				rows.add(row);
+			}
+		}
+		
+		if (rows.isEmpty()) {
+			return;
+		}
+
+		Map<String, Object> parameters = new HashMap<>(1);
+		parameters.put(ROWS, rows);
+		
+		try {
+			executeCypher(this.updateLastAccessTimesQuery, parameters);
+		} catch (RuntimeException e) {
+			// Keep the updates for the next flush unless newer ones have been buffered since
+			for (Map<String, Object> row : rows) {
+				this.pendingLastAccessTimes.merge((String) row.get(SESSION_ID),
+						(Long) row.get(LAST_ACCESS_TIME), Math::max);
+			}
+			throw e;
+		}
+		
+		if (logger.isDebugEnabled()) {
+			logger.debug("Flushed " + rows.size() + " buffered last accessed times");
+		}
+	}
+
+	/**
+	 * Flushes buffered last accessed times on shutdown and releases the OGM sessions
+	 * kept by an {@link OgmCypherExecutionStrategy}.
+	 */
+	@Override
+	public void destroy() {
+		try {
+			flushLastAccessTimes();
+		} finally {
+			if (this.executionStrategy instanceof OgmCypherExecutionStrategy) {
+				((OgmCypherExecutionStrategy) this.executionStrategy).destroy();
+			}
+		}
 	}
 
 	@Override
 	public OgmSession getSession(final String sessionId) {
+		return timed(OgmSessionMetrics.Operation.GET, () -> loadSession(sessionId));
+	}
+
+	private OgmSession loadSession(String sessionId) {
+
+		if (this.sessionCache != null) {
+			OgmSession cachedSession = getCachedSession(sessionId);
+			if (cachedSession != null) {
+				return cachedSession;
+			}
+		}
 
 		OgmSession ogmSession = null;
 				
-		Map<String, Object> parameters = new HashMap<>(1);
-		parameters.put(SESSION_ID, sessionId);
-		
-		Result result = executeCypher(getSessionQuery, parameters);
+		Statement statement = createGetSessionStatement(sessionId);
+		Result result = executeCypher(statement.getCypher(), statement.getParameters(), true);
 		
 		Iterator<Map<String, Object>> resultIterator = result.iterator();
 		
 		if (resultIterator.hasNext()) {
 		
 			Map<String, Object> r = resultIterator.next();			
-			NodeModel nodeModel = (NodeModel) r.get("n");
+			Object node = r.get("n");
 		
-			MapSession session = new MapSession(sessionId);
-			
-			long creationTime = ((Number) nodeModel.property(CREATION_TIME)).longValue();			
-			session.setCreationTime(Instant.ofEpochMilli(creationTime));
+			MapSession session = readSessionMetadata(sessionId, node);
 
-			long lastAccessedTime = ((Number) nodeModel.property(LAST_ACCESS_TIME)).longValue();
-			session.setLastAccessedTime(Instant.ofEpochMilli(lastAccessedTime));
+			boolean expired = session.isExpired();
+			
+			if (expired) {
+				this.metrics.recordExpiredOnRead();
+				delete(sessionId);
+			} else {
+				
+				Map<String, byte[]> serializedAttributes = readSessionAttributes(node, session);
 			
-			long maxInactiveInterval = ((Number) nodeModel.property(MAX_INACTIVE_INTERVAL)).longValue();
-			session.setMaxInactiveInterval(Duration.ofMillis(maxInactiveInterval));
+				Object version = getNodeProperty(node, VERSION);
+				if (this.sessionCache != null && version != null) {
+					cacheSession(session, ((Number) version).longValue(), serializedAttributes);
+				}
+			
+				ogmSession = new OgmSession(session, serializedAttributes);
+				ogmSession.principalNameLoaded((String) getNodeProperty(node, PRINCIPAL_NAME));
+				
+			}
+			
+		}
+		
+		return ogmSession;
+	}
+
+	/**
+	 * Create a {@link MapSession} holding the id, timestamps and maximum inactive interval
+	 * stored on the given session node.
+	 */
+	MapSession readSessionMetadata(String sessionId, Object node) {
+		return readSessionMetadata(sessionId, key -> getNodeProperty(node, key));
+	}
+
+	private MapSession readSessionMetadata(String sessionId, Function<String, Object> properties) {
+
+		MapSession session = new MapSession(sessionId);
+		
+		long creationTime = ((Number) properties.apply(CREATION_TIME)).longValue();			
+		session.setCreationTime(Instant.ofEpochMilli(creationTime));
+
+		long lastAccessedTime = ((Number) properties.apply(LAST_ACCESS_TIME)).longValue();
+		Long pendingLastAccessTime = this.pendingLastAccessTimes.get(sessionId);
+		if (pendingLastAccessTime != null && pendingLastAccessTime > lastAccessedTime) {
+			lastAccessedTime = pendingLastAccessTime;
+		}
+		session.setLastAccessedTime(Instant.ofEpochMilli(lastAccessedTime));
+		
+		long maxInactiveInterval = ((Number) properties.apply(MAX_INACTIVE_INTERVAL)).longValue();
+		session.setMaxInactiveInterval(Duration.ofMillis(maxInactiveInterval));
+		
+		return session;
+	}
+
+	/**
+	 * Copy the attributes stored on the given session node into the session. Serialized
+	 * values are only deserialized once they are first read from the {@link OgmSession}.
+	 * @return the serialized form of the attributes that had to be deserialized
+	 */
+	Map<String, byte[]> readSessionAttributes(Object node, Session session) {
+		Map<String, byte[]> serializedAttributes = new HashMap<>();
+		forEachNodeProperty(node, (key, value) -> {
+			if (key.startsWith(ATTRIBUTE_KEY_PREFIX)) {
+				String attributeName = key.substring(ATTRIBUTE_KEY_PREFIX.length());
+				byte[] serializedValue = null;
+				
+				if (requiresSerialization(value)) {
+					serializedValue = (byte[]) value;
+					value = new SerializedAttributeValue(serializedValue);
+				} else {
+					value = processAttributeValue(value, false);
+				}
+
+				attributeName = processAttributeName(attributeName, false);
+
+				session.setAttribute(attributeName, value);
+				if (serializedValue != null) {
+					serializedAttributes.put(attributeName, serializedValue);
+				}
+			}
+		});
+		return serializedAttributes;
+	}
+
+	/**
+	 * Return the value of a property of a node returned by the session queries. Subclasses
+	 * executing queries through a different driver override this together with
+	 * {@link #forEachNodeProperty(Object, BiConsumer)}.
+	 * @param node the node as returned in the query result
+	 * @param key the property key
+	 * @return the property value or {@code null} if the node does not have the property
+	 */
+	protected Object getNodeProperty(Object node, String key) {
+		return ((NodeModel) node).property(key);
+	}
+
+	/**
+	 * Pass every property of a node returned by the session queries to the given action.
+	 * @param node the node as returned in the query result
+	 * @param action the action to perform for each property key and value
+	 */
+	protected void forEachNodeProperty(Object node, BiConsumer<String, Object> action) {
+		for (Property<String, Object> property : ((NodeModel) node).getPropertyList()) {
+			action.accept(property.getKey(), property.getValue());
+		}
+	}
+
+	private OgmSession getCachedSession(String sessionId) {
+		
+		OgmSessionCache.Entry entry = this.sessionCache.get(sessionId);
+		
+		if (entry != null && this.sessionCache.requiresRevalidation(entry)) {
+			Map<String, Object> parameters = new HashMap<>(1);
+			parameters.put(SESSION_ID, sessionId);
+			Long version = readVersion(executeCypher(this.getSessionVersionQuery, parameters, true));
+			if (version != null && version.longValue() == entry.getVersion()) {
+				entry.revalidated();
+			} else {
+				this.sessionCache.invalidate(sessionId);
+				entry = null;
+			}
+		}
+		
+		if (entry == null) {
+			this.sessionCache.recordMiss();
+			return null;
+		}
+		
+		MapSession session = entry.copySession();
+		
+		// The database may hold a more recent last accessed time, let a full load decide
+		if (session.isExpired()) {
+			this.sessionCache.invalidate(sessionId);
+			this.sessionCache.recordMiss();
+			return null;
+		}
+		
+		// Every hit gets its own lazily deserialized values, none are shared with the entry
+		Map<String, byte[]> serializedAttributes = entry.copySerializedAttributes();
+		serializedAttributes.forEach((attributeName, serializedValue) ->
+				session.setAttribute(attributeName, new SerializedAttributeValue(serializedValue)));
+		
+		this.sessionCache.recordHit();
+		return new OgmSession(session, serializedAttributes);
+	}
+
+	/**
+	 * Cache the given session, keeping only native attribute values and the serialized
+	 * form of all others. If a serialized form is unknown the session is not cached.
+	 */
+	private void cacheSession(Session session, long version, Map<String, byte[]> serializedAttributes) {
+		Map<String, Object> nativeAttributes = new HashMap<>();
+		for (String attributeName : session.getAttributeNames()) {
+			if (serializedAttributes.containsKey(attributeName)) {
+				continue;
+			}
+			Object value = session.getAttribute(attributeName).orElse(null);
+			if (value == null) {
+				continue;
+			}
+			if (value instanceof SerializedAttributeValue || requiresSerialization(value)) {
+				this.sessionCache.invalidate(session.getId());
+				return;
+			}
+			nativeAttributes.put(attributeName, value);
+		}
+		this.sessionCache.put(session, version, nativeAttributes, serializedAttributes);
+	}
 
-			boolean expired = session.isExpired();
-			
-			if (expired) {
-				delete(sessionId);
-			} else {
-				
-				List<Property<String, Object>> propertyList = nodeModel.getPropertyList();			
-				for (Property<String, Object> property : propertyList) {
-					String attributeName = property.getKey();
-					if (attributeName.startsWith(ATTRIBUTE_KEY_PREFIX)) { // Strip the ATTRIBUTE_KEY_PREFIX
-						attributeName = attributeName.substring(10);
-						Object value = property.getValue();
-						
-						boolean requiresSerialization = requiresSerialization(value);						
-						if (requiresSerialization) {
-							byte bytes[] = (byte[]) value;
-							value = deserialize(bytes);							
-						}
-
-						attributeName = processAttributeName(attributeName, false);
-						value = processAttributeValue(value, false);
-
-						session.setAttribute(attributeName, value);
-						
-					}				
+	private Long readVersion(Result result) {
+		if (result != null) {
+			Iterator<Map<String, Object>> resultIterator = result.iterator();
+			if (resultIterator.hasNext()) {
+				Object version = resultIterator.next().get(VERSION);
+				if (version != null) {
+					return ((Number) version).longValue();
 				}
-			
-				ogmSession = new OgmSession(session);
-				
 			}
-			
 		}
-		
-		return ogmSession;
+		return null;
 	}
 
+	/**
+	 * Delete the session with the given id. Saves merge on the session id, so a save of
+	 * a copy of the session that was loaded before the delete recreates its node. Callers
+	 * revoking sessions, for example with {@link #deleteByPrincipalNames(Collection)},
+	 * must make sure requests still holding the session are not saved afterwards, for
+	 * instance by also changing the credentials of the principal.
+	 */
 	@Override
 	public void delete(String sessionId) {
+		timed(OgmSessionMetrics.Operation.DELETE, () -> {
+			this.pendingLastAccessTimes.remove(sessionId);
+			Statement statement = createDeleteStatement(sessionId);
+			executeCypher(statement.getCypher(), statement.getParameters());
+			if (this.sessionCache != null) {
+				this.sessionCache.invalidate(sessionId);
+			}
+			return null;
+		});
+	}
+	
+	/**
+	 * Delete the sessions with the given ids in a single statement.
+	 * @param sessionIds the ids of the sessions to delete
+	 * @return the number of sessions deleted
+	 */
+	public int deleteByIds(Collection<String> sessionIds) {
+		Assert.notNull(sessionIds, "sessionIds must not be null");
+		if (sessionIds.isEmpty()) {
+			return 0;
+		}
+		Map<String, Object> parameters = new HashMap<>(1);
+		parameters.put(SESSION_IDS, new ArrayList<>(sessionIds));
+		return timed(OgmSessionMetrics.Operation.BULK_DELETE,
+				() -> deleteSessions(this.deleteSessionsByIdQuery, parameters));
+	}
+
+	/**
+	 * Delete all sessions of the given principals in a single statement, for example to
+	 * log them out everywhere. As with {@link #delete(String)}, a session still held by a
+	 * request in progress is recreated if that request saves it after the delete.
+	 * @param principalNames the names of the principals
+	 * @return the number of sessions deleted
+	 */
+	public int deleteByPrincipalNames(Collection<String> principalNames) {
+		Assert.notNull(principalNames, "principalNames must not be null");
+		if (principalNames.isEmpty()) {
+			return 0;
+		}
 		Map<String, Object> parameters = new HashMap<>(1);
-		parameters.put(SESSION_ID, sessionId);		
-		executeCypher(this.deleteSessionQuery, parameters);
+		parameters.put(PRINCIPAL_NAMES, new ArrayList<>(principalNames));
+		return timed(OgmSessionMetrics.Operation.BULK_DELETE, () -> {
+			// The property is written for every session, linked to a principal node or not
+			int deleted = deleteSessions(this.deleteSessionsByPrincipalNameQuery, parameters);
+			if (this.principalRelationships) {
+				executeCypher(this.deleteOrphanedPrincipalsQuery, parameters);
+			}
+			return deleted;
+		});
+	}
+
+	/**
+	 * Delete all sessions of the given principal in a single statement.
+	 * @param principalName the name of the principal
+	 * @return the number of sessions deleted
+	 * @see #deleteByPrincipalNames(Collection)
+	 */
+	public int deleteByPrincipalName(String principalName) {
+		return deleteByPrincipalNames(Collections.singletonList(principalName));
+	}
+
+	private int deleteSessions(String cypher, Map<String, Object> parameters) {
+		Result result = executeCypher(cypher, parameters);
+		int deleted = 0;
+		for (Map<String, Object> row : result) {
+			String sessionId = (String) row.get(SESSION_ID);
+			this.pendingLastAccessTimes.remove(sessionId);
+			if (this.sessionCache != null) {
+				this.sessionCache.invalidate(sessionId);
+			}
+			deleted++;
+		}
+		return deleted;
 	}
 	
 	public Map<String, OgmSession> findByIndexNameAndIndexValue(String indexName,
@@ -372,48 +1327,39 @@ public class OgmSessionRepository implements
 			return Collections.emptyMap();
 		}
 
-		Map<String, Object> parameters = new HashMap<String, Object>(1);
+		return timed(OgmSessionMetrics.Operation.FIND_BY_PRINCIPAL_NAME,
+				() -> findByPrincipalName(indexValue));
+	}
+
+	private Map<String, OgmSession> findByPrincipalName(String indexValue) {
+
+		Map<String, Object> parameters = new HashMap<String, Object>(2);
 		parameters.put(PRINCIPAL_NAME, indexValue);
-		Result result = executeCypher(listSessionsByPrincipalNameQuery, parameters);
+		parameters.put(NOW, System.currentTimeMillis());
+		
+		if (this.findByPrincipalNameMetadataOnly) {
+			return findSessionMetadataByPrincipalName(parameters);
+		}
+		
+		Result result = executeCypher(isPrincipalRelationshipLookup() ? this.listSessionsByPrincipalRelationshipQuery
+				: this.listSessionsByPrincipalNameQuery, parameters, true);
 		
 		Map<String, OgmSession> sessionMap = new HashMap<>();
 	
 		Iterator<Map<String, Object>> resultIterator = result.iterator();
 		
-		// TODO: DRY with getSession()
 		while (resultIterator.hasNext()) {
 			
 			Map<String, Object> r = resultIterator.next();			
-			NodeModel nodeModel = (NodeModel) r.get("n");
+			Object node = r.get("n");
 
-			String sessionId = (String) nodeModel.property(SESSION_ID);
-			MapSession session = new MapSession(sessionId);
+			String sessionId = (String) getNodeProperty(node, SESSION_ID);
+			MapSession session = readSessionMetadata(sessionId, node);
 			
-			// TODO: Decide what to do with the principal name
-			String principalName = (String) nodeModel.property(PRINCIPAL_NAME);
-			//session.setPrincipalName(principalName);
+			Map<String, byte[]> serializedAttributes = readSessionAttributes(node, session);
 			
-			long creationTime = ((Number) nodeModel.property(CREATION_TIME)).longValue();			
-			session.setCreationTime(Instant.ofEpochMilli(creationTime));
-			
-			long lastAccessedTime = ((Number) nodeModel.property(LAST_ACCESS_TIME)).longValue();
-			session.setLastAccessedTime(Instant.ofEpochMilli(lastAccessedTime));
-			
-			long maxInactiveInterval = ((Number) nodeModel.property(MAX_INACTIVE_INTERVAL)).longValue();
-			session.setMaxInactiveInterval(Duration.ofMillis(maxInactiveInterval));
-			
-			List<Property<String, Object>> propertyList = nodeModel.getPropertyList();
-			for (Property<String, Object> property : propertyList) {
-				String attributeName = property.getKey();
-				if (attributeName.startsWith(ATTRIBUTE_KEY_PREFIX)) {
-					attributeName = attributeName.substring(10); // Strip the ATTRIBUTE_KEY_PREFIX
-					byte bytes[] = (byte[]) property.getValue();
-					Object attributeValue = deserialize(bytes);
-					session.setAttribute(attributeName, attributeValue);
-				}				
-			}
-			
-			OgmSession ogmSession = new OgmSession(session);
+			OgmSession ogmSession = new OgmSession(session, serializedAttributes);
+			ogmSession.principalNameLoaded((String) getNodeProperty(node, PRINCIPAL_NAME));
 			sessionMap.put(sessionId, ogmSession);
 			
 		}
@@ -421,27 +1367,218 @@ public class OgmSessionRepository implements
 		return sessionMap;
 	}
 
+	/**
+	 * Whether principal name lookups can expand the principal relationship, that is once
+	 * existing sessions have been linked.
+	 */
+	private boolean isPrincipalRelationshipLookup() {
+		return this.principalRelationships && this.principalsLinked;
+	}
+
+	private Map<String, OgmSession> findSessionMetadataByPrincipalName(Map<String, Object> parameters) {
+		
+		Result result = executeCypher(isPrincipalRelationshipLookup() ? this.listSessionMetadataByPrincipalRelationshipQuery
+				: this.listSessionMetadataByPrincipalNameQuery, parameters, true);
+		
+		Map<String, OgmSession> sessionMap = new HashMap<>();
+		
+		for (Map<String, Object> row : result) {
+			String sessionId = (String) row.get(SESSION_ID);
+			MapSession session = readSessionMetadata(sessionId, row::get);
+			OgmSession ogmSession = new OgmSession(session, false);
+			ogmSession.principalNameLoaded((String) parameters.get(PRINCIPAL_NAME));
+			sessionMap.put(sessionId, ogmSession);
+		}
+		
+		return sessionMap;
+	}
+
+	/**
+	 * Load the attributes of a session that was read without them.
+	 */
+	private void loadSessionAttributes(OgmSession session) {
+		Statement statement = createGetSessionStatement(session.getOriginalId());
+		Result result = executeCypher(statement.getCypher(), statement.getParameters(), true);
+		Iterator<Map<String, Object>> resultIterator = result.iterator();
+		if (resultIterator.hasNext()) {
+			session.serializedAttributes.putAll(
+					readSessionAttributes(resultIterator.next().get("n"), session.delegate));
+		}
+	}
+
 	@Scheduled(cron = "${spring.session.cleanup.cron.expression:0 1 * * * *}")
 	public void cleanUpExpiredSessions() {
+		timed(OgmSessionMetrics.Operation.CLEANUP, () -> {
+			deleteExpiredSessions();
+			return null;
+		});
+	}
+
+	private void deleteExpiredSessions() {
+
+		// Buffered last accessed times may keep sessions alive
+		flushLastAccessTimes();
+
+		if (!this.cleanupJitter.isZero() && !pause(Duration.ofMillis(
+				ThreadLocalRandom.current().nextLong(this.cleanupJitter.toMillis() + 1)))) {
+			return;
+		}
+
+		if (this.cleanupLock && !acquireLock(CLEANUP_LOCK_NAME, this.cleanupLockTimeToLive)) {
+			if (this.sessionCache != null) {
+				this.sessionCache.invalidateExpired();
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Skipping cleanup of expired sessions, the cleanup lock is held by another instance");
+			}
+			return;
+		}
+
+		long start = System.currentTimeMillis();
+		long deadline = this.cleanupTimeBudget.isZero() ? Long.MAX_VALUE
+				: start + this.cleanupTimeBudget.toMillis();
+
+		// The migrations share the budget of the run, unfinished ones resume on the next
+		if (!this.expiryTimeMigrated && !migrateExpiryTimes(deadline)) {
+			return;
+		}
+
+		if (this.principalRelationships && !this.principalsLinked && !linkPrincipals(deadline)) {
+			return;
+		}
 
 		Date now = new Date();
-		Map<String, Object> parameters = new HashMap<>(1);
+		Map<String, Object> parameters = new HashMap<>(2);
 		parameters.put(NOW, now.getTime());
-		Result result = executeCypher(deleteSessionsByLastAccessTimeQuery, parameters);
+		parameters.put(BATCH_SIZE, this.cleanupBatchSize);
+		
+		int batchCount = 0;
+		int deletedCount = 0;
+		
+		while (true) {
+			
+			long batchStart = System.currentTimeMillis();
+			Result result = executeCypher(deleteSessionsByLastAccessTimeQuery, parameters);
+			int batchDeletedCount = result.queryStatistics().getNodesDeleted();
+			batchCount++;
+			deletedCount += batchDeletedCount;
+			
+			if (logger.isDebugEnabled()) {
+				logger.debug("Cleanup batch " + batchCount + " deleted " + batchDeletedCount
+						+ " expired sessions in " + (System.currentTimeMillis() - batchStart) + " ms");
+			}
+			
+			if (batchDeletedCount < this.cleanupBatchSize || !awaitNextBatch(deadline)) {
+				break;
+			}
+		}
+		
+		if (this.sessionCache != null) {
+			this.sessionCache.invalidateExpired();
+		}
 		
 		if (logger.isDebugEnabled()) {
-			int deletedCount = result.queryStatistics().getNodesDeleted();
-			logger.debug("Cleaned up " + deletedCount + " expired sessions");
+			logger.debug("Cleaned up " + deletedCount + " expired sessions in " + batchCount
+					+ " batches and " + (System.currentTimeMillis() - start) + " ms");
+		}
+	}
+
+	/**
+	 * Waits for the configured pause before the next cleanup batch.
+	 * @return false if the cleanup time budget is exhausted or the thread was interrupted,
+	 * leaving the remaining work to the next run
+	 */
+	private boolean awaitNextBatch(long deadline) {
+		if (System.currentTimeMillis() >= deadline) {
+			logger.info("Cleanup time budget of " + this.cleanupTimeBudget.toMillis()
+					+ " ms exhausted, the remaining work is done by the next run");
+			return false;
+		}
+		return pause(this.cleanupBatchPause);
+	}
+
+	/**
+	 * Sleeps for the given duration.
+	 * @return false if the thread was interrupted while sleeping
+	 */
+	private static boolean pause(Duration duration) {
+		if (duration.isZero() || duration.isNegative()) {
+			return true;
+		}
+		try {
+			Thread.sleep(duration.toMillis());
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
 		}
 	}
 
+	/**
+	 * Acquire or renew the named lock for this instance.
+	 * @return true if this instance holds the lock
+	 */
+	private boolean acquireLock(String lockName, Duration timeToLive) {
+		long now = System.currentTimeMillis();
+		Map<String, Object> parameters = new HashMap<>(4);
+		parameters.put(LOCK_NAME, lockName);
+		parameters.put(LOCK_OWNER, this.lockOwner);
+		parameters.put(NOW, now);
+		parameters.put(LOCK_EXPIRES_AT, now + timeToLive.toMillis());
+		Result result = executeCypher(this.acquireLockQuery, parameters);
+		return result != null && result.iterator().hasNext();
+	}
+
+	/**
+	 * Computes the {@code expiryTime} of session nodes that lack it, in batches, so that
+	 * they are picked up by the expiry cleanup. Once no such node is left the migration is
+	 * not attempted again.
+	 * @return false if the migration was interrupted before it finished
+	 */
+	private boolean migrateExpiryTimes(long deadline) {
+		Map<String, Object> parameters = new HashMap<>(1);
+		parameters.put(BATCH_SIZE, this.cleanupBatchSize);
+		int migratedCount;
+		do {
+			Result result = executeCypher(this.migrateExpiryTimeQuery, parameters);
+			migratedCount = result.queryStatistics().getPropertiesSet();
+			if (migratedCount > 0) {
+				logger.info("Computed " + EXPIRY_TIME + " of " + migratedCount + " existing sessions");
+			}
+			if (migratedCount >= this.cleanupBatchSize && !awaitNextBatch(deadline)) {
+				return false;
+			}
+		} while (migratedCount >= this.cleanupBatchSize);
+		this.expiryTimeMigrated = true;
+		return true;
+	}
+
+	/**
+	 * Links session nodes that are not yet linked to their principal node, in batches.
+	 * Until none is left the principal name lookups keep matching the property.
+	 * @return false if the linking was interrupted before it finished
+	 */
+	private boolean linkPrincipals(long deadline) {
+		Map<String, Object> parameters = new HashMap<>(1);
+		parameters.put(BATCH_SIZE, this.cleanupBatchSize);
+		int linkedCount;
+		do {
+			Result result = executeCypher(this.linkPrincipalsQuery, parameters);
+			linkedCount = result.queryStatistics().getRelationshipsCreated();
+			if (linkedCount > 0) {
+				logger.info("Linked " + linkedCount + " existing sessions to their principal");
+			}
+			if (linkedCount >= this.cleanupBatchSize && !awaitNextBatch(deadline)) {
+				return false;
+			}
+		} while (linkedCount >= this.cleanupBatchSize);
+		this.principalsLinked = true;
+		return true;
+	}
+
 	private static GenericConversionService createDefaultConversionService() {
-		GenericConversionService converter = new GenericConversionService();
-		converter.addConverter(Object.class, byte[].class,
-				new SerializingConverter());
-		converter.addConverter(byte[].class, Object.class,
-				new DeserializingConverter());
-		return converter;
+		return new SessionAttributeCodec(new JdkSessionAttributeSerializer())
+				.createConversionService();
 	}
 
 	private String getQuery(String base) {
@@ -449,29 +1586,129 @@ public class OgmSessionRepository implements
 	}
 	
 	private void prepareQueries() {
-		this.createSessionQuery = getQuery(CREATE_SESSION_QUERY);
+		this.saveSessionQuery = getQuery(SAVE_SESSION_QUERY);
 		this.getSessionQuery = getQuery(GET_SESSION_QUERY);
-		this.updateSessionQuery = getQuery(UPDATE_SESSION_QUERY);
+		this.getSessionVersionQuery = getQuery(GET_SESSION_VERSION_QUERY);
+		this.updateLastAccessTimesQuery = getQuery(UPDATE_LAST_ACCESS_TIMES_QUERY);
 		this.deleteSessionQuery = getQuery(DELETE_SESSION_QUERY);
+		this.deleteSessionsByIdQuery = getQuery(DELETE_SESSIONS_BY_ID_QUERY);
+		this.deleteSessionsByPrincipalNameQuery = getQuery(DELETE_SESSIONS_BY_PRINCIPAL_NAME_QUERY);
+		this.deleteOrphanedPrincipalsQuery = getQuery(DELETE_ORPHANED_PRINCIPALS_QUERY);
 		this.listSessionsByPrincipalNameQuery =
 				getQuery(LIST_SESSIONS_BY_PRINCIPAL_NAME_QUERY);		
+		this.listSessionMetadataByPrincipalNameQuery =
+				getQuery(LIST_SESSION_METADATA_BY_PRINCIPAL_NAME_QUERY);
+		this.saveSessionWithPrincipalQuery = getQuery(SAVE_SESSION_WITH_PRINCIPAL_QUERY);
+		this.listSessionsByPrincipalRelationshipQuery =
+				getQuery(LIST_SESSIONS_BY_PRINCIPAL_RELATIONSHIP_QUERY);
+		this.listSessionMetadataByPrincipalRelationshipQuery =
+				getQuery(LIST_SESSION_METADATA_BY_PRINCIPAL_RELATIONSHIP_QUERY);
 		this.deleteSessionsByLastAccessTimeQuery =
 				getQuery(DELETE_SESSIONS_BY_LAST_ACCESS_TIME_QUERY);
+		this.migrateExpiryTimeQuery = getQuery(MIGRATE_EXPIRY_TIME_QUERY);
+		this.linkPrincipalsQuery = getQuery(LINK_PRINCIPALS_QUERY);
+		this.acquireLockQuery = getQuery(ACQUIRE_LOCK_QUERY);
 	}
 	
 	public byte[] serialize(Object attributeValue) {		
-		byte bytes[] = (byte[]) this.conversionService.convert(attributeValue,
+		return compress(convertToBytes(attributeValue));
+	}
+
+	private byte[] convertToBytes(Object attributeValue) {
+		return (byte[]) this.conversionService.convert(attributeValue,
 				TypeDescriptor.valueOf(Object.class),
 				TypeDescriptor.valueOf(byte[].class));
+	}
+
+	private byte[] compress(byte[] bytes) {
+		if (this.attributeCompressor == null) {
+			return bytes;
+		}
+		long start = System.nanoTime();
+		byte[] compressed = this.attributeCompressor.compress(bytes);
+		if (compressed != bytes) {
+			this.metrics.recordCompression(bytes.length, compressed.length,
+					System.nanoTime() - start);
+		}
+		return compressed;
+	}
+
+	/**
+	 * Whether the given stored value carries a compression header. Only checked while a
+	 * compressor is configured, so values of other formats never need to avoid the header.
+	 */
+	private boolean isCompressed(byte[] bytes) {
+		return this.attributeCompressor != null && AttributeCompressor.isCompressed(bytes);
+	}
 
-		return bytes;
+	private byte[] decompress(byte[] bytes) {
+		return isCompressed(bytes) ? AttributeCompressor.decompress(bytes) : bytes;
 	}
 
 	public Object deserialize(Object attributeValue) {
+		// Compressed values are read as long as a compressor is configured, whatever its threshold
+		if (attributeValue instanceof byte[]) {
+			attributeValue = decompress((byte[]) attributeValue);
+		}
 		Object o = this.conversionService.convert(attributeValue, TypeDescriptor.valueOf(byte[].class), TypeDescriptor.valueOf(Object.class));
 		return o;		
 	}
 
+	/**
+	 * A serialized attribute value as read from a session node, deserialized on first
+	 * access. Every session, including each copy built from the cache, has its own
+	 * instances.
+	 */
+	final class SerializedAttributeValue {
+
+		private final byte[] serializedValue;
+
+		private volatile boolean deserialized;
+
+		private Object value;
+
+		SerializedAttributeValue(byte[] serializedValue) {
+			this.serializedValue = serializedValue;
+		}
+
+		Object getValue() {
+			if (!this.deserialized) {
+				synchronized (this) {
+					if (!this.deserialized) {
+						this.value = processAttributeValue(deserialize(this.serializedValue), false);
+						this.deserialized = true;
+					}
+				}
+			}
+			return this.value;
+		}
+
+	}
+
+	/**
+	 * A Cypher statement together with its parameters.
+	 */
+	static final class Statement {
+
+		private final String cypher;
+
+		private final Map<String, Object> parameters;
+
+		Statement(String cypher, Map<String, Object> parameters) {
+			this.cypher = cypher;
+			this.parameters = parameters;
+		}
+
+		String getCypher() {
+			return this.cypher;
+		}
+
+		Map<String, Object> getParameters() {
+			return this.parameters;
+		}
+
+	}
+
 	/**
 	 * The {@link Session} to use for {@link OgmSessionRepository}.
 	 */
@@ -483,16 +1720,96 @@ public class OgmSessionRepository implements
 
 		private boolean changed;
 
+		private boolean maxInactiveIntervalChanged;
+
+		/**
+		 * The last accessed time as last read from or written to the database.
+		 */
+		private Instant persistedLastAccessedTime;
+
+		/**
+		 * The id the session is stored under, differs from the current id after
+		 * {@link #changeSessionId()} until the session is saved.
+		 */
+		private String originalId;
+
 		private Map<String, Object> delta = new HashMap<>();
 
+		/**
+		 * The names of attributes removed since the session was loaded or saved.
+		 */
+		private final Set<String> removedAttributes = new HashSet<>();
+
+		/**
+		 * The serialized form of attribute values as last read from or written to the
+		 * database.
+		 */
+		private final Map<String, byte[]> serializedAttributes;
+
+		/**
+		 * The serialized form of attribute values written by the save in progress.
+		 */
+		private final Map<String, byte[]> pendingSerializedAttributes = new HashMap<>();
+
+		/**
+		 * False if the session was read without its attributes and they have not been
+		 * loaded since.
+		 */
+		private boolean attributesLoaded = true;
+
+		/**
+		 * The principal name as last resolved or read from the database.
+		 */
+		private String principalName;
+
+		private boolean principalNameResolved;
+
+		/**
+		 * True if an attribute the principal name is resolved from has been set or removed
+		 * since the session was loaded or saved.
+		 */
+		private boolean principalDirty;
+
+		/**
+		 * The principal name stored in the database, if known.
+		 */
+		private String persistedPrincipalName;
+
+		private boolean persistedPrincipalNameKnown;
+
 		OgmSession() {
 			this.delegate = new MapSession();
+			this.originalId = this.delegate.getId();
 			this.isNew = true;
+			this.serializedAttributes = new HashMap<>();
 		}
 
 		OgmSession(Session delegate) {
+			this(delegate, new HashMap<>());
+		}
+
+		OgmSession(Session delegate, Map<String, byte[]> serializedAttributes) {
 			Assert.notNull(delegate, "Session cannot be null");
 			this.delegate = delegate;
+			this.originalId = delegate.getId();
+			this.persistedLastAccessedTime = delegate.getLastAccessedTime();
+			this.serializedAttributes = serializedAttributes;
+		}
+
+		OgmSession(Session delegate, boolean attributesLoaded) {
+			this(delegate);
+			this.attributesLoaded = attributesLoaded;
+		}
+
+		boolean isAttributesLoaded() {
+			return this.attributesLoaded;
+		}
+
+		private void loadAttributes() {
+			if (!this.attributesLoaded) {
+				this.attributesLoaded = true;
+				loadSessionAttributes(this);
+			}
 		}
 
 		boolean isNew() {
@@ -503,44 +1820,171 @@ public class OgmSessionRepository implements
 			return this.changed;
 		}
 
+		boolean hasChanges() {
+			return this.isNew || this.changed || !this.delta.isEmpty()
+					|| !this.removedAttributes.isEmpty() || isSessionIdChanged();
+		}
+
+		boolean isLastAccessedTimeMoved(Duration threshold) {
+			return this.persistedLastAccessedTime == null || Duration
+					.between(this.persistedLastAccessedTime, getLastAccessedTime())
+					.compareTo(threshold) > 0;
+		}
+
+		/**
+		 * Whether the last accessed time is the only state that may have changed since the
+		 * session was loaded or saved.
+		 */
+		boolean isTouchOnly() {
+			return !this.isNew && this.delta.isEmpty() && this.removedAttributes.isEmpty()
+					&& !this.maxInactiveIntervalChanged && !isSessionIdChanged();
+		}
+
 		Map<String, Object> getDelta() {
 			return this.delta;
 		}
 
+		String getOriginalId() {
+			return this.originalId;
+		}
+
+		boolean isSessionIdChanged() {
+			return !this.originalId.equals(getId());
+		}
+
+		/**
+		 * Whether the principal name differs from the stored one. Only resolves the
+		 * principal name if an attribute it is resolved from has been set or removed.
+		 */
+		boolean isPrincipalChanged() {
+			return this.principalDirty && (!this.persistedPrincipalNameKnown
+					|| !ObjectUtils.nullSafeEquals(this.persistedPrincipalName, getPrincipalName()));
+		}
+
+		boolean isMaxInactiveIntervalChanged() {
+			return this.maxInactiveIntervalChanged;
+		}
+
+		Set<String> getRemovedAttributes() {
+			return this.removedAttributes;
+		}
+
+		/**
+		 * Whether the given uncompressed value equals the one last read or written. A
+		 * compressed stored value is decompressed once and kept in that form.
+		 */
+		boolean isSerializedValueUnchanged(String attributeName, byte[] serializedValue) {
+			byte[] storedValue = this.serializedAttributes.get(attributeName);
+			if (storedValue != null && isCompressed(storedValue)) {
+				storedValue = decompress(storedValue);
+				this.serializedAttributes.put(attributeName, storedValue);
+			}
+			return Arrays.equals(storedValue, serializedValue);
+		}
+
+		void serializedValueWritten(String attributeName, byte[] serializedValue) {
+			this.pendingSerializedAttributes.put(attributeName, serializedValue);
+		}
+
 		void clearChangeFlags() {
+			if (this.principalNameResolved) {
+				this.persistedPrincipalName = this.principalName;
+				this.persistedPrincipalNameKnown = true;
+			}
 			this.isNew = false;
 			this.changed = false;
+			this.principalDirty = false;
+			this.maxInactiveIntervalChanged = false;
+			this.serializedAttributes.keySet().removeAll(this.delta.keySet());
+			this.serializedAttributes.keySet().removeAll(this.removedAttributes);
+			this.serializedAttributes.putAll(this.pendingSerializedAttributes);
+			this.pendingSerializedAttributes.clear();
 			this.delta.clear();
+			this.removedAttributes.clear();
+			this.originalId = getId();
+			this.persistedLastAccessedTime = getLastAccessedTime();
 		}
 
 		String getPrincipalName() {
-			return PRINCIPAL_NAME_RESOLVER.resolvePrincipal(this);
+			if (!this.principalNameResolved) {
+				this.principalName = PRINCIPAL_NAME_RESOLVER.resolvePrincipal(this);
+				this.principalNameResolved = true;
+			}
+			return this.principalName;
+		}
+
+		/**
+		 * Use the principal name stored with the session until an attribute it is
+		 * resolved from changes.
+		 */
+		void principalNameLoaded(String principalName) {
+			this.principalName = principalName;
+			this.principalNameResolved = true;
+			this.persistedPrincipalName = principalName;
+			this.persistedPrincipalNameKnown = true;
 		}
 
 		public String getId() {
 			return this.delegate.getId();
 		}
 
+		public String changeSessionId() {
+			if (this.isNew) {
+				// Not stored yet, so the new id is simply used on create
+				this.originalId = this.delegate.changeSessionId();
+				return this.originalId;
+			}
+			return this.delegate.changeSessionId();
+		}
+
+		@SuppressWarnings("unchecked")
 		public <T> Optional<T> getAttribute(String attributeName) {
-			return this.delegate.getAttribute(attributeName);
+			loadAttributes();
+			Optional<Object> attributeValue = this.delegate.getAttribute(attributeName);
+			if (attributeValue.isPresent()
+					&& attributeValue.get() instanceof SerializedAttributeValue) {
+				Object value = ((SerializedAttributeValue) attributeValue.get()).getValue();
+				this.delegate.setAttribute(attributeName, value);
+				return Optional.ofNullable((T) value);
+			}
+			return (Optional<T>) attributeValue;
 		}
 
 		public Set<String> getAttributeNames() {
+			loadAttributes();
 			return this.delegate.getAttributeNames();
 		}
 
 		public void setAttribute(String attributeName, Object attributeValue) {
+			if (attributeValue == null) {
+				removeAttribute(attributeName);
+				return;
+			}
+			loadAttributes();
 			this.delegate.setAttribute(attributeName, attributeValue);
 			this.delta.put(attributeName, attributeValue);
+			this.removedAttributes.remove(attributeName);
 			if (PRINCIPAL_NAME_INDEX_NAME.equals(attributeName) ||
 					SPRING_SECURITY_CONTEXT.equals(attributeName)) {
 				this.changed = true;
+				this.principalDirty = true;
+				this.principalNameResolved = false;
 			}
 		}
 
 		public void removeAttribute(String attributeName) {
+			loadAttributes();
 			this.delegate.removeAttribute(attributeName);
-			this.delta.put(attributeName, null);
+			this.delta.remove(attributeName);
+			if (!this.isNew) {
+				this.removedAttributes.add(attributeName);
+			}
+			if (PRINCIPAL_NAME_INDEX_NAME.equals(attributeName) ||
+					SPRING_SECURITY_CONTEXT.equals(attributeName)) {
+				this.changed = true;
+				this.principalDirty = true;
+				this.principalNameResolved = false;
+			}
 		}
 
 		public Instant getCreationTime() {
@@ -559,6 +2003,7 @@ public class OgmSessionRepository implements
 		public void setMaxInactiveInterval(Duration interval) {
 			this.delegate.setMaxInactiveInterval(interval);
 			this.changed = true;
+			this.maxInactiveIntervalChanged = true;
 		}
 
 		public Duration getMaxInactiveInterval() {
@@ -578,7 +2023,13 @@ public class OgmSessionRepository implements
 	 */
 	static class PrincipalNameResolver {
 
-		private SpelExpressionParser parser = new SpelExpressionParser();
+		private static final boolean springSecurityPresent = ClassUtils.isPresent(
+				"org.springframework.security.core.context.SecurityContext",
+				PrincipalNameResolver.class.getClassLoader());
+
+		private final Expression expression = new SpelExpressionParser(
+				new SpelParserConfiguration(SpelCompilerMode.MIXED, null))
+				.parseExpression("authentication?.name");
 
 		public String resolvePrincipal(Session session) {
 			Optional<String> principalName = session.getAttribute(PRINCIPAL_NAME_INDEX_NAME);
@@ -587,36 +2038,64 @@ public class OgmSessionRepository implements
 			}
 			Optional<Object> authentication = session.getAttribute(SPRING_SECURITY_CONTEXT);
 			if (authentication.isPresent()) {
-				Expression expression = this.parser
-						.parseExpression("authentication?.name");
-				return expression.getValue(authentication.get(), String.class);
+				if (springSecurityPresent && SecurityContextAccessor.isSecurityContext(authentication.get())) {
+					return SecurityContextAccessor.getName(authentication.get());
+				}
+				return this.expression.getValue(authentication.get(), String.class);
 			}
 			return null;
 		}
 
 	}
 
-	protected Result executeCypher(String cypher, Map<String, Object> parameters) {
+	/**
+	 * Reads the principal name from a Spring Security {@code SecurityContext} without
+	 * going through SpEL. Kept in a separate class so Spring Security is only loaded when
+	 * it is present.
+	 */
+	private static class SecurityContextAccessor {
+
+		static boolean isSecurityContext(Object value) {
+			return value instanceof SecurityContext;
+		}
 
-		org.neo4j.ogm.session.Session ogmSession = sessionFactory.openSession();
+		static String getName(Object securityContext) {
+			Authentication authentication = ((SecurityContext) securityContext).getAuthentication();
+			return (authentication != null) ? authentication.getName() : null;
+		}
 
-		Transaction transaction = ogmSession.beginTransaction();
+	}
 
+	private <T> T timed(OgmSessionMetrics.Operation operation, Supplier<T> action) {
+		long start = System.nanoTime();
+		boolean success = false;
 		try {
+			T result = action.get();
+			success = true;
+			return result;
+		} finally {
+			this.metrics.recordOperation(operation, System.nanoTime() - start, success);
+		}
+	}
+
+	protected Result executeCypher(String cypher, Map<String, Object> parameters) {
+		return executeCypher(cypher, parameters, false);
+	}
 
-			Result result = ogmSession.query(cypher, parameters);
+	protected Result executeCypher(String cypher, Map<String, Object> parameters, boolean readOnly) {
 
-			transaction.commit();
+		long start = System.nanoTime();
 
-			return result;
-			
-		} catch (Exception e) {
-			String message = "Exception while executing cypher: '" + cypher + "'";
-			logger.error(message);
-			transaction.rollback();
-			throw new RuntimeException(message, e);
+		try {
+			return this.executionStrategy.execute(cypher, parameters, readOnly);
+		} catch (RuntimeException e) {
+			this.metrics.recordRollback();
+			throw e;
 		} finally {
-			transaction.close();
+			if (logger.isTraceEnabled()) {
+				logger.trace("Executed cypher '" + cypher + "' in "
+						+ (System.nanoTime() - start) / 1000 + " us");
+			}
 		}
 		
 	}
@@ -656,31 +2135,6 @@ public class OgmSessionRepository implements
 		
 	}
 
-	protected String buildQuerySuffix(Map<String, Object> parameters) {
-		
-		StringBuilder stringBuilder = new StringBuilder();			
-		Iterator<Entry<String, Object>> entries = parameters.entrySet().iterator();
-		while (entries.hasNext()) {
-			Entry<String, Object> entry = entries.next();
-			String key = entry.getKey();
-
-			stringBuilder.append("n.");
-			stringBuilder.append(key);
-			stringBuilder.append("={");					
-			stringBuilder.append(key);
-			stringBuilder.append("}");
-			if (entries.hasNext()) {
-				stringBuilder.append(",");
-			}
-
-		}
-
-		String suffix = stringBuilder.toString();
-		
-		return suffix;
-		
-	}
-
 	/**
 	 * Allow subclasses an opportunity to manipulate the session attribute property's name before it is persisted to or after being read from the database. 
 	 * This maybe useful in use cases such as high security environments where the application wishes to encrypt the property's name before it is persisted.
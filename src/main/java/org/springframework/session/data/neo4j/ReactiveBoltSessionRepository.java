@@ -0,0 +1,189 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.session.data.neo4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+import org.neo4j.driver.v1.AccessMode;
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.Record;
+import org.neo4j.driver.v1.Session;
+import org.neo4j.driver.v1.StatementResultCursor;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.session.MapSession;
+import org.springframework.session.ReactiveSessionRepository;
+import org.springframework.session.data.neo4j.OgmSessionRepository.OgmSession;
+import org.springframework.session.data.neo4j.OgmSessionRepository.Statement;
+import org.springframework.util.Assert;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * A {@link ReactiveSessionRepository} implementation that uses the asynchronous API of
+ * the Neo4j Bolt {@link Driver} to store sessions without blocking the calling thread.
+ * <p>
+ * Sessions use the same node layout, label handling and delta semantics as
+ * {@link OgmSessionRepository}, so reactive and servlet based applications can share one
+ * session store. Session caching, write-behind and expired session cleanup are left to
+ * the blocking repositories.
+ *
+ * @author Eric Spiegelberg
+ */
+public class ReactiveBoltSessionRepository implements ReactiveSessionRepository<OgmSession> {
+
+	private final Driver driver;
+
+	/**
+	 * Builds the statements and maps the nodes, but never executes a statement itself.
+	 */
+	private final BoltSessionRepository delegate;
+
+	/**
+	 * Create a new {@link ReactiveBoltSessionRepository} instance which uses the provided
+	 * {@link Driver} to manage sessions.
+	 * @param driver the {@link Driver} to use
+	 */
+	public ReactiveBoltSessionRepository(Driver driver) {
+		Assert.notNull(driver, "Property 'driver' must not be null");
+		this.driver = driver;
+		this.delegate = new BoltSessionRepository(driver);
+	}
+
+	/**
+	 * Set the label used to store sessions.
+	 * @param label the label
+	 */
+	public void setLabel(String label) {
+		this.delegate.setLabel(label);
+	}
+
+	/**
+	 * Set the maximum inactive interval in seconds between requests before newly created
+	 * sessions will be invalidated. A negative time indicates that the session will never
+	 * timeout.
+	 * @param defaultMaxInactiveInterval the maximum inactive interval in seconds
+	 */
+	public void setDefaultMaxInactiveInterval(Integer defaultMaxInactiveInterval) {
+		this.delegate.setDefaultMaxInactiveInterval(defaultMaxInactiveInterval);
+	}
+
+	/**
+	 * Sets the {@link ConversionService} to use.
+	 * @param conversionService the converter to set
+	 */
+	public void setConversionService(ConversionService conversionService) {
+		this.delegate.setConversionService(conversionService);
+	}
+
+	/**
+	 * Sets the {@link SessionAttributeSerializer} used to write attribute values that
+	 * cannot be stored as native properties, replacing the {@link ConversionService}.
+	 * Values written with Java serialization remain readable.
+	 * @param attributeSerializer the serializer to use
+	 */
+	public void setAttributeSerializer(SessionAttributeSerializer attributeSerializer) {
+		this.delegate.setAttributeSerializer(attributeSerializer);
+	}
+
+	/**
+	 * Sets the {@link AttributeCompressor} used to compress large serialized attribute
+	 * values. By default, values are not compressed. Compressed values are read
+	 * regardless of this setting.
+	 * @param attributeCompressor the compressor to use or {@code null} to disable
+	 * compression
+	 */
+	public void setAttributeCompressor(AttributeCompressor attributeCompressor) {
+		this.delegate.setAttributeCompressor(attributeCompressor);
+	}
+
+	/**
+	 * Set the amount of time the last accessed time has to move before a save that
+	 * changes nothing else is written.
+	 * @param touchThreshold the touch threshold
+	 */
+	public void setTouchThreshold(Duration touchThreshold) {
+		this.delegate.setTouchThreshold(touchThreshold);
+	}
+
+	@Override
+	public Mono<OgmSession> createSession() {
+		return Mono.fromSupplier(this.delegate::createSession);
+	}
+
+	@Override
+	public Mono<Void> save(OgmSession session) {
+		return Mono.defer(() -> {
+			if (!this.delegate.requiresSave(session)) {
+				return Mono.empty();
+			}
+			Statement statement = this.delegate.createSaveStatement(session);
+			return run(statement, AccessMode.WRITE)
+					.doOnSuccess(records -> session.clearChangeFlags())
+					.then();
+		});
+	}
+
+	@Override
+	public Mono<OgmSession> findById(String id) {
+		return Mono.defer(() -> run(this.delegate.createGetSessionStatement(id), AccessMode.READ))
+				.<OgmSession>flatMap(records -> {
+					if (records.isEmpty()) {
+						return Mono.empty();
+					}
+					Object node = records.get(0).get("n").asNode();
+					MapSession session = this.delegate.readSessionMetadata(id, node);
+					if (session.isExpired()) {
+						return delete(id).then(Mono.empty());
+					}
+					Map<String, byte[]> serializedAttributes = this.delegate
+							.readSessionAttributes(node, session);
+					return Mono.just(this.delegate.new OgmSession(session, serializedAttributes));
+				});
+	}
+
+	@Override
+	public Mono<Void> delete(String id) {
+		return Mono.defer(() -> run(this.delegate.createDeleteStatement(id), AccessMode.WRITE))
+				.then();
+	}
+
+	/**
+	 * Run the statement in an auto-commit transaction and close the driver session once
+	 * all records have been received.
+	 */
+	private Mono<List<Record>> run(Statement statement, AccessMode accessMode) {
+		Session session = this.driver.session(accessMode);
+		CompletionStage<List<Record>> records = session
+				.runAsync(statement.getCypher(), statement.getParameters())
+				.thenCompose(StatementResultCursor::listAsync)
+				.handle((result, error) -> session.closeAsync().thenApply(closed -> {
+					if (error != null) {
+						throw error instanceof CompletionException
+								? (CompletionException) error : new CompletionException(error);
+					}
+					return result;
+				}))
+				.thenCompose(Function.identity());
+		return Mono.fromCompletionStage(records);
+	}
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.session.data.neo4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.core.convert.support.GenericConversionService;
+import org.springframework.core.serializer.Deserializer;
+import org.springframework.core.serializer.Serializer;
+import org.springframework.core.serializer.support.DeserializingConverter;
+import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.util.Assert;
+
+/**
+ * Writes session attribute values with one {@link SessionAttributeSerializer}, prefixed by
+ * its format marker, and reads values written by any registered serializer.
+ * <p>
+ * Values written by {@link JdkSessionAttributeSerializer} carry no extra marker, as the
+ * Java serialization stream header already identifies them. Java serialized values can
+ * always be read, so nodes written by previous versions stay readable after switching to
+ * another format. To migrate without downtime, first roll out the new serializer as an
+ * additional reader, then make it the writer.
+ *
+ * @author Eric Spiegelberg
+ */
+public class SessionAttributeCodec implements Serializer<Object>, Deserializer<Object> {
+
+	private final SessionAttributeSerializer writer;
+
+	private final Map<Byte, SessionAttributeSerializer> readers = new HashMap<>();
+
+	/**
+	 * Create a new {@link SessionAttributeCodec} instance.
+	 * @param writer the serializer used to write values, also used to read them
+	 * @param readers additional serializers used to read values written in other formats
+	 */
+	public SessionAttributeCodec(SessionAttributeSerializer writer,
+			SessionAttributeSerializer... readers) {
+		Assert.notNull(writer, "writer must not be null");
+		this.writer = writer;
+		register(new JdkSessionAttributeSerializer());
+		for (SessionAttributeSerializer reader : readers) {
+			register(reader);
+		}
+		register(writer);
+	}
+
+	private void register(SessionAttributeSerializer serializer) {
+		Assert.notNull(serializer, "serializer must not be null");
+		Assert.isTrue(serializer.getFormat() != JdkSessionAttributeSerializer.FORMAT
+				|| serializer instanceof JdkSessionAttributeSerializer,
+				"Format marker 0xAC is reserved for Java serialization");
+		Assert.isTrue(serializer.getFormat() != AttributeCompressor.MAGIC,
+				"Format marker 0xCE is reserved for compressed values");
+		this.readers.put(serializer.getFormat(), serializer);
+	}
+
+	@Override
+	public void serialize(Object object, OutputStream outputStream) throws IOException {
+		if (!(this.writer instanceof JdkSessionAttributeSerializer)) {
+			outputStream.write(this.writer.getFormat());
+		}
+		this.writer.serialize(object, outputStream);
+	}
+
+	@Override
+	public Object deserialize(InputStream inputStream) throws IOException {
+		PushbackInputStream stream = new PushbackInputStream(inputStream, 1);
+		int format = stream.read();
+		if (format == -1) {
+			throw new IOException("Cannot deserialize an empty value");
+		}
+		SessionAttributeSerializer reader = this.readers.get((byte) format);
+		if (reader == null) {
+			throw new IOException("No serializer registered for format marker " + format);
+		}
+		if (reader instanceof JdkSessionAttributeSerializer) {
+			stream.unread(format);
+		}
+		return reader.deserialize(stream);
+	}
+
+	/**
+	 * Create a {@link GenericConversionService} converting between attribute values and
+	 * byte arrays through this codec, as used by {@link OgmSessionRepository}.
+	 * @return the conversion service
+	 */
+	public GenericConversionService createConversionService() {
+		GenericConversionService conversionService = new GenericConversionService();
+		conversionService.addConverter(Object.class, byte[].class,
+				new SerializingConverter(this));
+		conversionService.addConverter(byte[].class, Object.class,
+				new DeserializingConverter(this));
+		return conversionService;
+	}
+
+	/**
+	 * Create a {@link GenericConversionService} that writes with the given serializer, or
+	 * Java serialization if there is none, and reads Java serialized values as well as
+	 * every format of the given serializers. Declaring a new serializer as a reader first
+	 * lets all instances read its format before it is used for writing.
+	 * @param writer the serializer used to write values, may be {@code null}
+	 * @param readers additional serializers used to read values
+	 * @param classLoader the class loader used to read Java serialized values, may be
+	 * {@code null} to use the default class loader
+	 * @return the conversion service
+	 */
+	public static GenericConversionService createConversionService(SessionAttributeSerializer writer,
+			Collection<? extends SessionAttributeSerializer> readers, ClassLoader classLoader) {
+		Assert.notNull(readers, "readers must not be null");
+		List<SessionAttributeSerializer> allReaders = new ArrayList<>();
+		allReaders.add(new JdkSessionAttributeSerializer(classLoader));
+		allReaders.addAll(readers);
+		return new SessionAttributeCodec((writer != null) ? writer : allReaders.get(0),
+				allReaders.toArray(new SessionAttributeSerializer[allReaders.size()]))
+				.createConversionService();
+	}
+
+}
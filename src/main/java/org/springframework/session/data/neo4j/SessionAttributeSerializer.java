@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.session.data.neo4j;
+
+import org.springframework.core.serializer.Deserializer;
+import org.springframework.core.serializer.Serializer;
+
+/**
+ * Turns session attribute values that cannot be stored as native Neo4j properties into
+ * bytes and back.
+ * <p>
+ * Every implementation has a format marker. {@link SessionAttributeCodec} writes this
+ * marker in front of each value and uses it to pick the matching implementation when
+ * reading. That lets nodes written in different formats be read side by side while the
+ * format is being migrated.
+ *
+ * @author Eric Spiegelberg
+ * @see JdkSessionAttributeSerializer
+ * @see JacksonSessionAttributeSerializer
+ * @see KryoSessionAttributeSerializer
+ */
+public interface SessionAttributeSerializer extends Serializer<Object>, Deserializer<Object> {
+
+	/**
+	 * Return the marker byte identifying values written by this serializer. Must be
+	 * unique among the serializers registered with a {@link SessionAttributeCodec}.
+	 * {@code 0xAC} is reserved for Java serialization and {@code 0xCE} for the header
+	 * of values compressed by {@link AttributeCompressor}.
+	 * @return the format marker
+	 */
+	byte getFormat();
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.session.data.neo4j.config.annotation.web.http;
+
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.ogm.session.SessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.lang.Nullable;
+import org.springframework.session.data.neo4j.BoltSessionRepository;
+import org.springframework.session.data.neo4j.OgmSessionRepository;
+
+/**
+ * Variant of {@link OgmHttpSessionConfiguration} that stores sessions through a
+ * {@link BoltSessionRepository}. In order to use this a single {@link Driver} must be
+ * exposed as a Bean named "springSessionNeo4jDriver"; no {@link SessionFactory} is
+ * required.
+ *
+ * @author Eric Spiegelberg
+ * @see EnableOgmHttpSession#useBoltDriver()
+ */
+@Configuration
+public class BoltHttpSessionConfiguration extends OgmHttpSessionConfiguration {
+
+	private Driver driver;
+
+	@Bean
+	@Override
+	public OgmSessionRepository sessionRepository(
+			@Nullable @Qualifier("springSessionOgmSessionFactory") SessionFactory sessionFactory) {
+		return configureSessionRepository(new BoltSessionRepository(this.driver));
+	}
+
+	@Autowired
+	@Qualifier("springSessionNeo4jDriver")
+	public void setDriver(Driver driver) {
+		this.driver = driver;
+	}
+
+}
@@ -74,7 +74,7 @@ import org.springframework.session.data.neo4j.OgmSessionRepository;
 @Configuration
 @Target(ElementType.TYPE)
 @Retention(RetentionPolicy.RUNTIME)
-@Import(OgmHttpSessionConfiguration.class)
+@Import(OgmHttpSessionConfigurationSelector.class)
 public @interface EnableOgmHttpSession {
 
 	/**
@@ -91,4 +91,90 @@ public @interface EnableOgmHttpSession {
 	 */
 	int maxInactiveIntervalInSeconds() default MapSession.DEFAULT_MAX_INACTIVE_INTERVAL_SECONDS;
 
+	/**
+	 * Whether a unique constraint on the session id and indexes on the principal name and
+	 * expiry time are created for the configured label on startup. Existing schema
+	 * elements are left untouched.
+	 *
+	 * @return true if the schema should be initialized
+	 */
+	boolean initializeSchema() default false;
+
+	/**
+	 * The number of seconds the last accessed time of a session has to move past the
+	 * stored value before a save that changes nothing else is written. By default, every
+	 * change is written.
+	 *
+	 * @return the touch threshold in seconds
+	 */
+	int touchThresholdInSeconds() default 0;
+
+	/**
+	 * The maximum number of expired sessions deleted, or existing nodes migrated, in a
+	 * single transaction of the cleanup. By default, it is set to 1000.
+	 *
+	 * @return the cleanup batch size
+	 */
+	int cleanupBatchSize() default OgmSessionRepository.DEFAULT_CLEANUP_BATCH_SIZE;
+
+	/**
+	 * The number of milliseconds the cleanup pauses between two batches. By default, there
+	 * is no pause.
+	 *
+	 * @return the cleanup batch pause in milliseconds
+	 */
+	long cleanupBatchPauseInMillis() default 0;
+
+	/**
+	 * The number of seconds after which a cleanup run stops starting new batches, leaving
+	 * the remaining work to the next run. By default, there is no limit.
+	 *
+	 * @return the cleanup time budget in seconds
+	 */
+	int cleanupTimeBudgetInSeconds() default 0;
+
+	/**
+	 * The maximum number of seconds of random delay before each cleanup run. By default,
+	 * there is no delay.
+	 *
+	 * @return the cleanup jitter in seconds
+	 */
+	int cleanupJitterInSeconds() default 0;
+
+	/**
+	 * Whether expired sessions are only cleaned up by the instance holding the cleanup
+	 * lock.
+	 *
+	 * @return true if a single instance should clean up
+	 */
+	boolean cleanupLock() default false;
+
+	/**
+	 * The number of seconds the cleanup lock is held after it was last acquired. By
+	 * default, it is set to 600 seconds (10 minutes).
+	 *
+	 * @return the cleanup lock time to live in seconds
+	 */
+	int cleanupLockTimeToLiveInSeconds() default 600;
+
+	/**
+	 * Whether saves that only change the last accessed time of a session are buffered and
+	 * written in batches. The flush interval in milliseconds can be set through the
+	 * {@code spring.session.neo4j.write-behind.flush-interval} property and defaults to
+	 * 1000.
+	 *
+	 * @return true if last accessed times should be written behind
+	 */
+	boolean writeBehind() default false;
+
+	/**
+	 * Whether sessions are stored through a Neo4j Bolt
+	 * {@link org.neo4j.driver.v1.Driver} exposed as a bean named
+	 * "springSessionNeo4jDriver" instead of an OGM
+	 * {@link org.neo4j.ogm.session.SessionFactory}. Both share the same node layout.
+	 *
+	 * @return true if the Bolt driver should be used
+	 */
+	boolean useBoltDriver() default false;
+
 }
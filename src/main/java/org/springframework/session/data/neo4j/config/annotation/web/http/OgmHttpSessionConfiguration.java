@@ -15,10 +15,18 @@
  */
 package org.springframework.session.data.neo4j.config.annotation.web.http;
 
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.neo4j.ogm.session.SessionFactory;
 import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.NoUniqueBeanDefinitionException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.EmbeddedValueResolverAware;
@@ -34,7 +42,13 @@ import org.springframework.core.serializer.support.SerializingConverter;
 import org.springframework.core.type.AnnotationMetadata;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.session.config.annotation.web.http.SpringHttpSessionConfiguration;
+import org.springframework.session.data.neo4j.AttributeCompressor;
+import org.springframework.session.data.neo4j.MicrometerOgmSessionMetrics;
+import org.springframework.session.data.neo4j.OgmSessionCache;
+import org.springframework.session.data.neo4j.OgmSessionMetrics;
 import org.springframework.session.data.neo4j.OgmSessionRepository;
+import org.springframework.session.data.neo4j.SessionAttributeCodec;
+import org.springframework.session.data.neo4j.SessionAttributeSerializer;
 import org.springframework.session.jdbc.config.annotation.web.http.EnableJdbcHttpSession;
 import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
@@ -57,11 +71,39 @@ import org.springframework.util.StringValueResolver;
 @Configuration
 @EnableScheduling
 public class OgmHttpSessionConfiguration extends SpringHttpSessionConfiguration
-		implements BeanClassLoaderAware, ImportAware, EmbeddedValueResolverAware {
+		implements BeanClassLoaderAware, BeanFactoryAware, ImportAware, EmbeddedValueResolverAware {
+
+	private static final boolean micrometerPresent = ClassUtils.isPresent(
+			"io.micrometer.core.instrument.MeterRegistry",
+			OgmHttpSessionConfiguration.class.getClassLoader());
 
 	private String label;
 
 	private Integer maxInactiveIntervalInSeconds;
+
+	private boolean initializeSchema;
+
+	private Integer cleanupBatchSize;
+
+	private Duration cleanupBatchPause;
+
+	private Duration cleanupTimeBudget;
+
+	private Duration cleanupJitter;
+
+	private boolean cleanupLock;
+
+	private Duration cleanupLockTimeToLive;
+
+	private Integer touchThresholdInSeconds;
+
+	private boolean writeBehind;
+
+	private Integer writeBehindMaxBatchSize;
+
+	private boolean findByPrincipalNameMetadataOnly;
+
+	private boolean principalRelationships;
 	
 	@Autowired(required = false)
 	@Qualifier("conversionService")
@@ -69,6 +111,18 @@ public class OgmHttpSessionConfiguration extends SpringHttpSessionConfiguration
 
 	private ConversionService springSessionConversionService;
 
+	private OgmSessionCache sessionCache;
+
+	private SessionAttributeSerializer attributeSerializer;
+
+	private List<SessionAttributeSerializer> attributeSerializers = Collections.emptyList();
+
+	private OgmSessionMetrics metrics;
+
+	private AttributeCompressor attributeCompressor;
+
+	private ListableBeanFactory beanFactory;
+
 	private ClassLoader classLoader;
 
 	private StringValueResolver embeddedValueResolver;
@@ -77,18 +131,57 @@ public class OgmHttpSessionConfiguration extends SpringHttpSessionConfiguration
 	public OgmSessionRepository sessionRepository(
 			@Qualifier("springSessionOgmSessionFactory") SessionFactory sessionFactory) {
 		
-		OgmSessionRepository sessionRepository = new OgmSessionRepository(sessionFactory);
-		
+		return configureSessionRepository(new OgmSessionRepository(sessionFactory));
+	}
+
+	/**
+	 * Apply the label, expiry, cleanup, write-behind, conversion, compression and cache settings of this
+	 * configuration to the given repository.
+	 * @param sessionRepository the repository to configure
+	 * @return the configured repository
+	 */
+	protected OgmSessionRepository configureSessionRepository(OgmSessionRepository sessionRepository) {
 		String label = getLabel();
 		if (StringUtils.hasText(label)) {
 			sessionRepository.setLabel(label);
 		}
 		sessionRepository
 				.setDefaultMaxInactiveInterval(this.maxInactiveIntervalInSeconds);
+		sessionRepository.setInitializeSchema(this.initializeSchema);
+		if (this.cleanupBatchSize != null) {
+			sessionRepository.setCleanupBatchSize(this.cleanupBatchSize);
+		}
+		if (this.cleanupBatchPause != null) {
+			sessionRepository.setCleanupBatchPause(this.cleanupBatchPause);
+		}
+		if (this.cleanupTimeBudget != null) {
+			sessionRepository.setCleanupTimeBudget(this.cleanupTimeBudget);
+		}
+		if (this.cleanupJitter != null) {
+			sessionRepository.setCleanupJitter(this.cleanupJitter);
+		}
+		sessionRepository.setCleanupLock(this.cleanupLock);
+		if (this.cleanupLockTimeToLive != null) {
+			sessionRepository.setCleanupLockTimeToLive(this.cleanupLockTimeToLive);
+		}
+		if (this.touchThresholdInSeconds != null) {
+			sessionRepository.setTouchThreshold(Duration.ofSeconds(this.touchThresholdInSeconds));
+		}
+		sessionRepository.setWriteBehind(this.writeBehind);
+		if (this.writeBehindMaxBatchSize != null) {
+			sessionRepository.setWriteBehindMaxBatchSize(this.writeBehindMaxBatchSize);
+		}
+		sessionRepository.setFindByPrincipalNameMetadataOnly(this.findByPrincipalNameMetadataOnly);
+		sessionRepository.setPrincipalRelationships(this.principalRelationships);
 
 		if (this.springSessionConversionService != null) {
 			sessionRepository.setConversionService(this.springSessionConversionService);
 		}
+		else if (this.attributeSerializer != null || !this.attributeSerializers.isEmpty()) {
+			// Writes with "springSessionAttributeSerializer" and reads every serializer bean
+			sessionRepository.setConversionService(SessionAttributeCodec.createConversionService(
+					this.attributeSerializer, this.attributeSerializers, this.classLoader));
+		}
 		else if (this.conversionService != null) {
 			sessionRepository.setConversionService(this.conversionService);
 		}
@@ -96,6 +189,20 @@ public class OgmHttpSessionConfiguration extends SpringHttpSessionConfiguration
 			GenericConversionService conversionService = createConversionServiceWithBeanClassLoader();
 			sessionRepository.setConversionService(conversionService);
 		}
+		if (this.attributeCompressor != null) {
+			sessionRepository.setAttributeCompressor(this.attributeCompressor);
+		}
+		if (this.sessionCache != null) {
+			sessionRepository.setSessionCache(this.sessionCache);
+		}
+		OgmSessionMetrics metrics = this.metrics;
+		if (metrics == null && micrometerPresent) {
+			metrics = MeterRegistryLookup.createMetrics(this.beanFactory,
+					StringUtils.hasText(label) ? label : OgmSessionRepository.DEFAULT_LABEL);
+		}
+		if (metrics != null) {
+			sessionRepository.setMetrics(metrics);
+		}
 		return sessionRepository;
 	}
 
@@ -129,6 +236,39 @@ public class OgmHttpSessionConfiguration extends SpringHttpSessionConfiguration
 		this.springSessionConversionService = conversionService;
 	}
 
+	public void setBeanFactory(BeanFactory beanFactory) {
+		this.beanFactory = (ListableBeanFactory) beanFactory;
+	}
+
+	@Autowired(required = false)
+	@Qualifier("springSessionOgmSessionMetrics")
+	public void setMetrics(OgmSessionMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Autowired(required = false)
+	@Qualifier("springSessionAttributeSerializer")
+	public void setAttributeSerializer(SessionAttributeSerializer attributeSerializer) {
+		this.attributeSerializer = attributeSerializer;
+	}
+
+	@Autowired(required = false)
+	public void setAttributeSerializers(List<SessionAttributeSerializer> attributeSerializers) {
+		this.attributeSerializers = attributeSerializers;
+	}
+
+	@Autowired(required = false)
+	@Qualifier("springSessionAttributeCompressor")
+	public void setAttributeCompressor(AttributeCompressor attributeCompressor) {
+		this.attributeCompressor = attributeCompressor;
+	}
+
+	@Autowired(required = false)
+	@Qualifier("springSessionOgmSessionCache")
+	public void setSessionCache(OgmSessionCache sessionCache) {
+		this.sessionCache = sessionCache;
+	}
+
 	public void setLabel(String label) {
 		this.label = label;
 	}
@@ -137,6 +277,54 @@ public class OgmHttpSessionConfiguration extends SpringHttpSessionConfiguration
 		this.maxInactiveIntervalInSeconds = maxInactiveIntervalInSeconds;
 	}
 
+	public void setInitializeSchema(boolean initializeSchema) {
+		this.initializeSchema = initializeSchema;
+	}
+
+	public void setCleanupBatchSize(Integer cleanupBatchSize) {
+		this.cleanupBatchSize = cleanupBatchSize;
+	}
+
+	public void setCleanupBatchPause(Duration cleanupBatchPause) {
+		this.cleanupBatchPause = cleanupBatchPause;
+	}
+
+	public void setCleanupTimeBudget(Duration cleanupTimeBudget) {
+		this.cleanupTimeBudget = cleanupTimeBudget;
+	}
+
+	public void setCleanupJitter(Duration cleanupJitter) {
+		this.cleanupJitter = cleanupJitter;
+	}
+
+	public void setCleanupLock(boolean cleanupLock) {
+		this.cleanupLock = cleanupLock;
+	}
+
+	public void setCleanupLockTimeToLive(Duration cleanupLockTimeToLive) {
+		this.cleanupLockTimeToLive = cleanupLockTimeToLive;
+	}
+
+	public void setTouchThresholdInSeconds(Integer touchThresholdInSeconds) {
+		this.touchThresholdInSeconds = touchThresholdInSeconds;
+	}
+
+	public void setWriteBehind(boolean writeBehind) {
+		this.writeBehind = writeBehind;
+	}
+
+	public void setWriteBehindMaxBatchSize(Integer writeBehindMaxBatchSize) {
+		this.writeBehindMaxBatchSize = writeBehindMaxBatchSize;
+	}
+
+	public void setFindByPrincipalNameMetadataOnly(boolean findByPrincipalNameMetadataOnly) {
+		this.findByPrincipalNameMetadataOnly = findByPrincipalNameMetadataOnly;
+	}
+
+	public void setPrincipalRelationships(boolean principalRelationships) {
+		this.principalRelationships = principalRelationships;
+	}
+
 	private String getLabel() {
 		String systemProperty = System.getProperty("spring.session.neo4j.label", "");
 		if (StringUtils.hasText(systemProperty)) {
@@ -160,12 +348,49 @@ public class OgmHttpSessionConfiguration extends SpringHttpSessionConfiguration
 		}
 		this.maxInactiveIntervalInSeconds = enableAttrs
 				.getNumber("maxInactiveIntervalInSeconds");
+		this.initializeSchema = enableAttrs.getBoolean("initializeSchema");
+		this.touchThresholdInSeconds = enableAttrs
+				.getNumber("touchThresholdInSeconds");
+		this.cleanupBatchSize = enableAttrs.getNumber("cleanupBatchSize");
+		this.cleanupBatchPause = Duration.ofMillis(enableAttrs
+				.<Long>getNumber("cleanupBatchPauseInMillis"));
+		this.cleanupTimeBudget = Duration.ofSeconds(enableAttrs
+				.<Integer>getNumber("cleanupTimeBudgetInSeconds"));
+		this.cleanupJitter = Duration.ofSeconds(enableAttrs
+				.<Integer>getNumber("cleanupJitterInSeconds"));
+		this.cleanupLock = enableAttrs.getBoolean("cleanupLock");
+		this.cleanupLockTimeToLive = Duration.ofSeconds(enableAttrs
+				.<Integer>getNumber("cleanupLockTimeToLiveInSeconds"));
+		this.writeBehind = enableAttrs.getBoolean("writeBehind");
 	}
 
 	public void setEmbeddedValueResolver(StringValueResolver resolver) {
 		this.embeddedValueResolver = resolver;
 	}
 
+	/**
+	 * Creates {@link MicrometerOgmSessionMetrics} for the {@link MeterRegistry} bean, if
+	 * there is one. Kept in a separate class so Micrometer is only loaded when it is
+	 * present.
+	 */
+	private static class MeterRegistryLookup {
+
+		static OgmSessionMetrics createMetrics(ListableBeanFactory beanFactory, String label) {
+			if (beanFactory == null
+					|| beanFactory.getBeanNamesForType(MeterRegistry.class).length == 0) {
+				return null;
+			}
+			try {
+				return new MicrometerOgmSessionMetrics(
+						beanFactory.getBean(MeterRegistry.class), label);
+			}
+			catch (NoUniqueBeanDefinitionException e) {
+				return null;
+			}
+		}
+
+	}
+
 	/**
 	 * Property placeholder to process the @Scheduled annotation.
 	 * @return the {@link PropertySourcesPlaceholderConfigurer} to use
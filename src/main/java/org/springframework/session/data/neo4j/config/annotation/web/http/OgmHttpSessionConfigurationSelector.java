@@ -0,0 +1,43 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.session.data.neo4j.config.annotation.web.http;
+
+import java.util.Map;
+
+import org.springframework.context.annotation.ImportSelector;
+import org.springframework.core.annotation.AnnotationAttributes;
+import org.springframework.core.type.AnnotationMetadata;
+
+/**
+ * Selects {@link OgmHttpSessionConfiguration} or {@link BoltHttpSessionConfiguration}
+ * depending on {@link EnableOgmHttpSession#useBoltDriver()}.
+ *
+ * @author Eric Spiegelberg
+ */
+class OgmHttpSessionConfigurationSelector implements ImportSelector {
+
+	@Override
+	public String[] selectImports(AnnotationMetadata importingClassMetadata) {
+		Map<String, Object> enableAttrMap = importingClassMetadata
+				.getAnnotationAttributes(EnableOgmHttpSession.class.getName());
+		AnnotationAttributes enableAttrs = AnnotationAttributes.fromMap(enableAttrMap);
+		if (enableAttrs != null && enableAttrs.getBoolean("useBoltDriver")) {
+			return new String[] { BoltHttpSessionConfiguration.class.getName() };
+		}
+		return new String[] { OgmHttpSessionConfiguration.class.getName() };
+	}
+
+}
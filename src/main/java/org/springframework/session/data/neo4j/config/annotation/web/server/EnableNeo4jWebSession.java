@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.session.data.neo4j.config.annotation.web.server;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.session.MapSession;
+import org.springframework.session.data.neo4j.OgmSessionRepository;
+
+/**
+ * Add this annotation to an {@code @Configuration} class to expose the
+ * {@link org.springframework.web.server.session.WebSessionManager} as a bean named
+ * "webSessionManager" and backed by Neo4j. In order to leverage the annotation, a single
+ * {@link org.neo4j.driver.v1.Driver} must be provided. For example:
+ *
+ * <pre class="code">
+ * &#064;Configuration
+ * &#064;EnableNeo4jWebSession
+ * public class Neo4jWebSessionConfig {
+ *
+ *     &#064;Bean
+ *     public Driver springSessionNeo4jDriver() {
+ *         return GraphDatabase.driver("bolt://localhost", AuthTokens.basic("neo4j", "dev"));
+ *     }
+ *
+ * }
+ * </pre>
+ *
+ * Sessions are stored in the same layout as with {@link
+ * org.springframework.session.data.neo4j.config.annotation.web.http.EnableOgmHttpSession}.
+ *
+ * @author Eric Spiegelberg
+ * @see org.springframework.session.config.annotation.web.server.EnableSpringWebSession
+ */
+@Documented
+@Configuration
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Import(Neo4jWebSessionConfiguration.class)
+public @interface EnableNeo4jWebSession {
+
+	/**
+	 * The name of label used by Spring Session to store sessions.
+	 * @return the label name
+	 */
+	String label() default OgmSessionRepository.DEFAULT_LABEL;
+
+	/**
+	 * The session timeout in seconds. By default, it is set to 1800 seconds (30 minutes).
+	 * This should be a non-negative integer.
+	 *
+	 * @return the seconds a session can be inactive before expiring
+	 */
+	int maxInactiveIntervalInSeconds() default MapSession.DEFAULT_MAX_INACTIVE_INTERVAL_SECONDS;
+
+	/**
+	 * The number of seconds the last accessed time of a session has to move past the
+	 * stored value before a save that changes nothing else is written. By default, every
+	 * change is written.
+	 *
+	 * @return the touch threshold in seconds
+	 */
+	int touchThresholdInSeconds() default 0;
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.session.data.neo4j.config.annotation.web.server;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.driver.v1.Driver;
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.EmbeddedValueResolverAware;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportAware;
+import org.springframework.core.annotation.AnnotationAttributes;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.session.config.annotation.web.server.SpringWebSessionConfiguration;
+import org.springframework.session.data.neo4j.AttributeCompressor;
+import org.springframework.session.data.neo4j.ReactiveBoltSessionRepository;
+import org.springframework.session.data.neo4j.SessionAttributeCodec;
+import org.springframework.session.data.neo4j.SessionAttributeSerializer;
+import org.springframework.util.StringUtils;
+import org.springframework.util.StringValueResolver;
+
+/**
+ * Spring @Configuration class used to configure and initialize a Neo4j based WebSession
+ * provider implementation in Spring Session.
+ * <p>
+ * In order to use this a single {@link Driver} must be exposed as a Bean named
+ * "springSessionNeo4jDriver".
+ *
+ * @author Eric Spiegelberg
+ * @see EnableNeo4jWebSession
+ */
+@Configuration
+public class Neo4jWebSessionConfiguration extends SpringWebSessionConfiguration
+		implements BeanClassLoaderAware, ImportAware, EmbeddedValueResolverAware {
+
+	private String label;
+
+	private Integer maxInactiveIntervalInSeconds;
+
+	private Integer touchThresholdInSeconds;
+
+	private ConversionService springSessionConversionService;
+
+	private SessionAttributeSerializer attributeSerializer;
+
+	private List<SessionAttributeSerializer> attributeSerializers = Collections.emptyList();
+
+	private AttributeCompressor attributeCompressor;
+
+	private ClassLoader classLoader;
+
+	private StringValueResolver embeddedValueResolver;
+
+	@Bean
+	public ReactiveBoltSessionRepository sessionRepository(
+			@Qualifier("springSessionNeo4jDriver") Driver driver) {
+
+		ReactiveBoltSessionRepository sessionRepository = new ReactiveBoltSessionRepository(driver);
+
+		String label = getLabel();
+		if (StringUtils.hasText(label)) {
+			sessionRepository.setLabel(label);
+		}
+		sessionRepository
+				.setDefaultMaxInactiveInterval(this.maxInactiveIntervalInSeconds);
+		if (this.touchThresholdInSeconds != null) {
+			sessionRepository.setTouchThreshold(Duration.ofSeconds(this.touchThresholdInSeconds));
+		}
+		if (this.springSessionConversionService != null) {
+			sessionRepository.setConversionService(this.springSessionConversionService);
+		}
+		else if (this.attributeSerializer != null || !this.attributeSerializers.isEmpty()) {
+			// Same reader and writer selection as the HttpSession configuration
+			sessionRepository.setConversionService(SessionAttributeCodec.createConversionService(
+					this.attributeSerializer, this.attributeSerializers, this.classLoader));
+		}
+		if (this.attributeCompressor != null) {
+			sessionRepository.setAttributeCompressor(this.attributeCompressor);
+		}
+		return sessionRepository;
+	}
+
+	public void setBeanClassLoader(ClassLoader classLoader) {
+		this.classLoader = classLoader;
+	}
+
+	@Autowired(required = false)
+	@Qualifier("springSessionConversionService")
+	public void setSpringSessionConversionService(ConversionService conversionService) {
+		this.springSessionConversionService = conversionService;
+	}
+
+	@Autowired(required = false)
+	@Qualifier("springSessionAttributeSerializer")
+	public void setAttributeSerializer(SessionAttributeSerializer attributeSerializer) {
+		this.attributeSerializer = attributeSerializer;
+	}
+
+	@Autowired(required = false)
+	public void setAttributeSerializers(List<SessionAttributeSerializer> attributeSerializers) {
+		this.attributeSerializers = attributeSerializers;
+	}
+
+	@Autowired(required = false)
+	@Qualifier("springSessionAttributeCompressor")
+	public void setAttributeCompressor(AttributeCompressor attributeCompressor) {
+		this.attributeCompressor = attributeCompressor;
+	}
+
+	public void setLabel(String label) {
+		this.label = label;
+	}
+
+	public void setMaxInactiveIntervalInSeconds(Integer maxInactiveIntervalInSeconds) {
+		this.maxInactiveIntervalInSeconds = maxInactiveIntervalInSeconds;
+	}
+
+	public void setTouchThresholdInSeconds(Integer touchThresholdInSeconds) {
+		this.touchThresholdInSeconds = touchThresholdInSeconds;
+	}
+
+	private String getLabel() {
+		String systemProperty = System.getProperty("spring.session.neo4j.label", "");
+		if (StringUtils.hasText(systemProperty)) {
+			return systemProperty;
+		}
+		return this.label;
+	}
+
+	public void setImportMetadata(AnnotationMetadata importMetadata) {
+		Map<String, Object> enableAttrMap = importMetadata
+				.getAnnotationAttributes(EnableNeo4jWebSession.class.getName());
+		AnnotationAttributes enableAttrs = AnnotationAttributes.fromMap(enableAttrMap);
+		String labelValue = enableAttrs.getString("label");
+		if (StringUtils.hasText(labelValue)) {
+			this.label = this.embeddedValueResolver
+					.resolveStringValue(labelValue);
+		}
+		this.maxInactiveIntervalInSeconds = enableAttrs
+				.getNumber("maxInactiveIntervalInSeconds");
+		this.touchThresholdInSeconds = enableAttrs
+				.getNumber("touchThresholdInSeconds");
+	}
+
+	public void setEmbeddedValueResolver(StringValueResolver resolver) {
+		this.embeddedValueResolver = resolver;
+	}
+
+}
@@ -16,29 +16,50 @@
 package org.springframework.session.data.neo4j;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.verifyZeroInteractions;
 
+import java.net.URI;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.neo4j.driver.internal.InternalNode;
+import org.neo4j.driver.v1.AccessMode;
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.Record;
+import org.neo4j.driver.v1.StatementResult;
+import org.neo4j.driver.v1.Value;
+import org.neo4j.driver.v1.Values;
+import org.neo4j.driver.v1.summary.ResultSummary;
+import org.neo4j.driver.v1.summary.SummaryCounters;
 import org.neo4j.ogm.model.Result;
 import org.neo4j.ogm.response.model.NodeModel;
 import org.neo4j.ogm.response.model.QueryResultModel;
@@ -46,9 +67,11 @@ import org.neo4j.ogm.response.model.QueryStatisticsModel;
 import org.neo4j.ogm.session.Session;
 import org.neo4j.ogm.session.SessionFactory;
 import org.neo4j.ogm.transaction.Transaction;
+import org.springframework.core.convert.support.GenericConversionService;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextImpl;
 import org.springframework.session.FindByIndexNameSessionRepository;
 import org.springframework.session.MapSession;
 import org.springframework.test.util.ReflectionTestUtils;
@@ -83,7 +106,7 @@ public class OgmSessionRepositoryTests {
 	public void setUp() {
 		this.repository = new OgmSessionRepository(this.sessionFactory);
 		given(this.sessionFactory.openSession()).willReturn(session);		
-		given(session.beginTransaction()).willReturn(transaction);
+		given(session.beginTransaction(any(Transaction.Type.class))).willReturn(transaction);
 	}
 
 	@Test
@@ -233,7 +256,7 @@ public class OgmSessionRepositoryTests {
 				.isEqualTo(new MapSession().getMaxInactiveInterval());
 
 		verifyCounts(0);
-		verifyZeroInteractions(this.sessionFactory);
+		verifyNoMoreInteractions(this.sessionFactory);
 	}
 
 	@Test
@@ -249,7 +272,7 @@ public class OgmSessionRepositoryTests {
 		assertThat(session.getMaxInactiveInterval()).isEqualTo(Duration.ofSeconds(interval));
 		
 		verifyCounts(0);
-		verifyZeroInteractions(this.sessionFactory);
+		verifyNoMoreInteractions(this.sessionFactory);
 	}
 
 	@Test
@@ -263,7 +286,7 @@ public class OgmSessionRepositoryTests {
 		assertThat(session).isNotNull();
 		assertThat(session.isNew()).isFalse();
 
-		String expectedQuery = OgmSessionRepository.CREATE_SESSION_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);		
+		String expectedQuery = OgmSessionRepository.SAVE_SESSION_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);		
 		verify(this.session, times(1)).query(eq(expectedQuery), isA(Map.class));
 
 		verifyCounts(1);
@@ -284,7 +307,7 @@ public class OgmSessionRepositoryTests {
 		assertThat(session).isNotNull();
 		assertThat(session.isNew()).isFalse();
 
-		String expectedQuery = OgmSessionRepository.CREATE_SESSION_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		String expectedQuery = OgmSessionRepository.SAVE_SESSION_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
 		verify(this.session, times(1)).query(eq(expectedQuery), isA(Map.class));
 		
 		verifyCounts(1);
@@ -308,7 +331,7 @@ public class OgmSessionRepositoryTests {
 		assertThat(session).isNotNull();
 		assertThat(session.isNew()).isFalse();
 
-		String expectedQuery = OgmSessionRepository.CREATE_SESSION_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		String expectedQuery = OgmSessionRepository.SAVE_SESSION_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
 		verify(this.session, times(1)).query(eq(expectedQuery), isA(Map.class));
 		
 		verifyCounts(1);
@@ -322,10 +345,170 @@ public class OgmSessionRepositoryTests {
 		verifyCounts(2);
 		verifyNoMoreInteractions(this.sessionFactory);
 
-		expectedQuery = OgmSessionRepository.UPDATE_SESSION_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
-		expectedQuery = expectedQuery.replaceAll("%PROPERTIES_TO_UPDATE%", "n.lastAccessedTime={lastAccessedTime},n.attribute_testName={attribute_testName},n.maxInactiveInterval={maxInactiveInterval},n.principalName={principalName},n.sessionId={sessionId}");
-		verify(this.session, times(1)).query(eq(expectedQuery), isA(Map.class));
+		verify(this.session, times(2)).query(eq(expectedQuery), isA(Map.class));
+
+	}
+
+	@Test
+	public void saveNewAndUpdatedShareStatement() {
+		OgmSessionRepository.OgmSession session = this.repository.createSession();
+		session.setAttribute("testName", "testValue");
+		this.repository.save(session);
+
+		session.setAttribute("testName", "testValue2");
+		this.repository.save(session);
+
+		ArgumentCaptor<String> cypher = ArgumentCaptor.forClass(String.class);
+		ArgumentCaptor<Map> parameters = ArgumentCaptor.forClass(Map.class);
+		verify(this.session, times(2)).query(cypher.capture(), parameters.capture());
+		assertThat(cypher.getAllValues()).containsOnly(
+				"merge (n:SPRING_SESSION {sessionId:{sessionId}}) on create set n.creationTime={creationTime}, "
+						+ "n.principalName={principalName}, n.maxInactiveInterval={maxInactiveInterval} "
+						+ "set n += {nodeProperties}, n.version = coalesce(n.version, 0) + 1 return n.version as version");
+		assertThat(parameters.getAllValues().get(0))
+				.containsEntry(OgmSessionRepository.SESSION_ID, session.getId())
+				.containsEntry(OgmSessionRepository.CREATION_TIME, session.getCreationTime().toEpochMilli());
+		assertThat(getNodeProperties(parameters.getAllValues().get(0)))
+				.doesNotContainKeys(OgmSessionRepository.SESSION_ID, OgmSessionRepository.CREATION_TIME);
+	}
+
+	@Test
+	public void saveUpdatedWritesPrincipalNameOnlyWhenChanged() {
+		OgmSessionRepository.OgmSession session = this.repository.createSession();
+		session.setAttribute(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "username");
+		this.repository.save(session);
+
+		session.setAttribute("testName", "testValue");
+		this.repository.save(session);
+
+		session.setAttribute(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "username");
+		this.repository.save(session);
+
+		session.setAttribute(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "other");
+		session.setMaxInactiveInterval(Duration.ofMinutes(10));
+		this.repository.save(session);
+
+		ArgumentCaptor<Map> parameters = ArgumentCaptor.forClass(Map.class);
+		verify(this.session, times(4)).query(isA(String.class), parameters.capture());
+		assertThat(getNodeProperties(parameters.getAllValues().get(0)))
+				.containsEntry(OgmSessionRepository.PRINCIPAL_NAME, "username")
+				.containsKey(OgmSessionRepository.MAX_INACTIVE_INTERVAL);
+		assertThat(getNodeProperties(parameters.getAllValues().get(1)))
+				.doesNotContainKeys(OgmSessionRepository.PRINCIPAL_NAME,
+						OgmSessionRepository.MAX_INACTIVE_INTERVAL);
+		assertThat(getNodeProperties(parameters.getAllValues().get(2)))
+				.doesNotContainKeys(OgmSessionRepository.PRINCIPAL_NAME,
+						OgmSessionRepository.MAX_INACTIVE_INTERVAL);
+		assertThat(getNodeProperties(parameters.getAllValues().get(3)))
+				.containsEntry(OgmSessionRepository.PRINCIPAL_NAME, "other")
+				.containsEntry(OgmSessionRepository.MAX_INACTIVE_INTERVAL, 600000L);
+	}
+
+	@Test
+	public void saveStaleSessionAfterDeleteRecreatesFullNode() {
+		OgmSessionRepository.OgmSession session = this.repository.createSession();
+		session.setAttribute(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "username");
+		this.repository.save(session);
+
+		this.repository.delete(session.getId());
+
+		session.setAttribute("testName", "testValue");
+		this.repository.save(session);
+
+		ArgumentCaptor<String> cypher = ArgumentCaptor.forClass(String.class);
+		ArgumentCaptor<Map> parameters = ArgumentCaptor.forClass(Map.class);
+		verify(this.session, times(3)).query(cypher.capture(), parameters.capture());
+		assertThat(cypher.getAllValues().get(2)).contains(
+				"on create set n.creationTime={creationTime}, n.principalName={principalName}, "
+						+ "n.maxInactiveInterval={maxInactiveInterval} ");
+		assertThat(parameters.getAllValues().get(2))
+				.containsEntry(OgmSessionRepository.PRINCIPAL_NAME, "username")
+				.containsEntry(OgmSessionRepository.MAX_INACTIVE_INTERVAL,
+						session.getMaxInactiveInterval().toMillis());
+		assertThat(getNodeProperties(parameters.getAllValues().get(2)))
+				.doesNotContainKeys(OgmSessionRepository.PRINCIPAL_NAME,
+						OgmSessionRepository.MAX_INACTIVE_INTERVAL);
+	}
+
+	@Test
+	public void saveChangedSessionId() {
+		OgmSessionRepository.OgmSession session = this.repository.createSession();
+		session.setAttribute("cart", new ArrayList<>(Arrays.asList("a", "b")));
+		this.repository.save(session);
+		String originalId = session.getId();
+
+		String changedId = session.changeSessionId();
+		this.repository.save(session);
+
+		assertThat(changedId).isNotEqualTo(originalId).isEqualTo(session.getId());
+		assertThat(session.hasChanges()).isFalse();
+		ArgumentCaptor<Map> parameters = ArgumentCaptor.forClass(Map.class);
+		verify(this.session, times(2)).query(isA(String.class), parameters.capture());
+		assertThat(parameters.getAllValues().get(1))
+				.containsEntry(OgmSessionRepository.SESSION_ID, originalId);
+		assertThat(getNodeProperties(parameters.getAllValues().get(1)))
+				.containsEntry(OgmSessionRepository.SESSION_ID, changedId)
+				.doesNotContainKey(OgmSessionRepository.ATTRIBUTE_KEY_PREFIX + "cart");
+	}
+
+	@Test
+	public void saveNewChangedSessionId() {
+		OgmSessionRepository.OgmSession session = this.repository.createSession();
+		String changedId = session.changeSessionId();
+
+		this.repository.save(session);
+
+		ArgumentCaptor<Map> parameters = ArgumentCaptor.forClass(Map.class);
+		verify(this.session, times(1)).query(isA(String.class), parameters.capture());
+		assertThat(parameters.getValue()).containsEntry(OgmSessionRepository.SESSION_ID, changedId);
+		assertThat(getNodeProperties(parameters.getValue()))
+				.doesNotContainKey(OgmSessionRepository.SESSION_ID);
+	}
+
+	@Test
+	public void saveUpdatedAttributeSerializedValueUnchanged() {
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willReturn(new QueryResultModel(new ArrayList<>(), new QueryStatisticsModel()));
+		OgmSessionRepository.OgmSession session = this.repository.createSession();
+		session.setAttribute("cart", new ArrayList<>(Arrays.asList("a", "b")));
+		this.repository.save(session);
+
+		session.setAttribute("cart", new ArrayList<>(Arrays.asList("a", "b")));
+		this.repository.save(session);
+
+		session.setAttribute("cart", new ArrayList<>(Arrays.asList("a", "b", "c")));
+		this.repository.save(session);
+
+		ArgumentCaptor<Map> parameters = ArgumentCaptor.forClass(Map.class);
+		verify(this.session, times(3)).query(isA(String.class), parameters.capture());
+		assertThat(getNodeProperties(parameters.getAllValues().get(1)))
+				.doesNotContainKey(OgmSessionRepository.ATTRIBUTE_KEY_PREFIX + "cart");
+		assertThat(getNodeProperties(parameters.getAllValues().get(2)))
+				.containsKey(OgmSessionRepository.ATTRIBUTE_KEY_PREFIX + "cart");
+	}
+
+	@Test
+	public void saveUpdatedAttributeUnchangedNotCompressed() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		this.repository.setMetrics(new MicrometerOgmSessionMetrics(registry,
+				OgmSessionRepository.DEFAULT_LABEL));
+		this.repository.setAttributeCompressor(
+				new AttributeCompressor(AttributeCompressor.Algorithm.DEFLATE));
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willReturn(new QueryResultModel(new ArrayList<>(), new QueryStatisticsModel()));
+		String value = new String(new char[4096]).replace('\0', 'a');
+		OgmSessionRepository.OgmSession session = this.repository.createSession();
+		session.setAttribute("cart", new ArrayList<>(Arrays.asList(value)));
+		this.repository.save(session);
+
+		session.setAttribute("cart", new ArrayList<>(Arrays.asList(value)));
+		this.repository.save(session);
 
+		ArgumentCaptor<Map> parameters = ArgumentCaptor.forClass(Map.class);
+		verify(this.session, times(2)).query(isA(String.class), parameters.capture());
+		assertThat(getNodeProperties(parameters.getAllValues().get(1)))
+				.doesNotContainKey(OgmSessionRepository.ATTRIBUTE_KEY_PREFIX + "cart");
+		assertThat(registry.get("spring.session.neo4j.compression").timer().count()).isEqualTo(1);
 	}
 
 	@Test
@@ -343,8 +526,7 @@ public class OgmSessionRepositoryTests {
 		verifyCounts(1);
 		verifyNoMoreInteractions(this.sessionFactory);
 		
-		String expectedQuery = OgmSessionRepository.CREATE_SESSION_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
-		expectedQuery = expectedQuery.replaceAll("%PROPERTIES_TO_UPDATE%", "n.lastAccessedTime={lastAccessedTime},n.attribute_testName={attribute_testName},n.principalName={principalName},n.sessionId={sessionId},n.maxInactiveInterval={maxInactiveInterval}");
+		String expectedQuery = OgmSessionRepository.SAVE_SESSION_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
 		verify(this.session, times(1)).query(eq(expectedQuery), isA(Map.class));
 		
 		session.setAttribute("updated", true);
@@ -354,13 +536,10 @@ public class OgmSessionRepositoryTests {
 		verifyCounts(2);
 		verifyNoMoreInteractions(this.sessionFactory);
 
-		expectedQuery = OgmSessionRepository.UPDATE_SESSION_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
-		expectedQuery = expectedQuery.replaceAll("%PROPERTIES_TO_UPDATE%", "n.lastAccessedTime={lastAccessedTime},n.maxInactiveInterval={maxInactiveInterval},n.principalName={principalName},n.sessionId={sessionId},n.attribute_updated={attribute_updated}");
-		verify(this.session, times(1)).query(eq(expectedQuery), isA(Map.class));
+		verify(this.session, times(2)).query(eq(expectedQuery), isA(Map.class));
 		
 	}
 
-	// TODO: Should saving an unchanged Session update the last access time? I think so
 	@Test
 	public void saveUnchanged() {
 		OgmSessionRepository.OgmSession session = this.repository
@@ -377,20 +556,32 @@ public class OgmSessionRepositoryTests {
 		verifyCounts(1);
 		verifyNoMoreInteractions(this.sessionFactory);
 		
-		String expectedQuery = OgmSessionRepository.CREATE_SESSION_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
-		expectedQuery = expectedQuery.replaceAll("%PROPERTIES_TO_UPDATE%", "n.lastAccessedTime={lastAccessedTime},n.attribute_testName={attribute_testName},n.principalName={principalName},n.sessionId={sessionId},n.maxInactiveInterval={maxInactiveInterval}");
+		String expectedQuery = OgmSessionRepository.SAVE_SESSION_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
 		verify(this.session, times(1)).query(eq(expectedQuery), isA(Map.class));
 		
 		this.repository.save(session);
 		
 		assertThat(session.isNew()).isFalse();
+		verifyCounts(1);
+		verifyNoMoreInteractions(this.sessionFactory);
+	}
+
+	@Test
+	public void saveLastAccessedTimeWithinTouchThreshold() {
+		this.repository.setTouchThreshold(Duration.ofSeconds(60));
+
+		OgmSessionRepository.OgmSession session = this.repository.createSession();
+		this.repository.save(session);
+		verifyCounts(1);
+
+		session.setLastAccessedTime(session.getLastAccessedTime().plusSeconds(30));
+		this.repository.save(session);
+		verifyCounts(1);
+
+		session.setLastAccessedTime(session.getLastAccessedTime().plusSeconds(31));
+		this.repository.save(session);
 		verifyCounts(2);
-		verifyZeroInteractions(this.sessionFactory);
 		verifyNoMoreInteractions(this.sessionFactory);
-		
-		expectedQuery = OgmSessionRepository.UPDATE_SESSION_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
-		expectedQuery = expectedQuery.replaceAll("%PROPERTIES_TO_UPDATE%", "n.lastAccessedTime={lastAccessedTime},n.maxInactiveInterval={maxInactiveInterval},n.principalName={principalName},n.sessionId={sessionId}");
-		verify(this.session, times(1)).query(eq(expectedQuery), isA(Map.class));
 	}
 
 	@Test
@@ -529,7 +720,7 @@ public class OgmSessionRepositoryTests {
 				.findByIndexNameAndIndexValue("testIndexName", indexValue);
 
 		assertThat(sessions).isEmpty();
-		verifyZeroInteractions(this.sessionFactory);
+		verifyNoMoreInteractions(this.sessionFactory);
 	}
 
 	@Test
@@ -617,6 +808,219 @@ public class OgmSessionRepositoryTests {
 		verify(this.session, times(1)).query(eq(expectedQuery), isA(Map.class));
 	}
 
+	@Test
+	public void findByIndexNameAndIndexValueMetadataOnly() {
+		this.repository.setFindByPrincipalNameMetadataOnly(true);
+		long now = new Date().getTime();
+		Map<String, Object> row = new HashMap<>();
+		row.put(OgmSessionRepository.SESSION_ID, "testSessionId");
+		row.put(OgmSessionRepository.CREATION_TIME, now);
+		row.put(OgmSessionRepository.LAST_ACCESS_TIME, now);
+		row.put(OgmSessionRepository.MAX_INACTIVE_INTERVAL, 1800000L);
+		List<Map<String, Object>> r = new ArrayList<>();
+		r.add(row);
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willReturn(new QueryResultModel(r, new QueryStatisticsModel()),
+						createSessionResult("testSessionId", 1L));
+
+		Map<String, OgmSessionRepository.OgmSession> sessions = this.repository
+				.findByIndexNameAndIndexValue(
+						FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "username");
+
+		assertThat(sessions).containsOnlyKeys("testSessionId");
+		OgmSessionRepository.OgmSession session = sessions.get("testSessionId");
+		assertThat(session.getLastAccessedTime().toEpochMilli()).isEqualTo(now);
+		String expectedQuery = OgmSessionRepository.LIST_SESSION_METADATA_BY_PRINCIPAL_NAME_QUERY
+				.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		ArgumentCaptor<Map> parameters = ArgumentCaptor.forClass(Map.class);
+		verify(this.session, times(1)).query(eq(expectedQuery), parameters.capture());
+		assertThat(parameters.getValue()).containsKey(OgmSessionRepository.NOW);
+		verifyCounts(1);
+
+		assertThat(session.<String>getAttribute("color")).contains("blue");
+		verifyCounts(2);
+	}
+
+	@Test
+	public void savePrincipalRelationships() {
+		this.repository.setPrincipalRelationships(true);
+		String saveWithPrincipal = OgmSessionRepository.SAVE_SESSION_WITH_PRINCIPAL_QUERY
+				.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		String save = OgmSessionRepository.SAVE_SESSION_QUERY
+				.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		OgmSessionRepository.OgmSession session = this.repository.createSession();
+		this.repository.save(session);
+
+		session.setAttribute("testName", "testValue");
+		this.repository.save(session);
+
+		session.setAttribute(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "username");
+		this.repository.save(session);
+
+		ArgumentCaptor<Map> parameters = ArgumentCaptor.forClass(Map.class);
+		verify(this.session, times(2)).query(eq(saveWithPrincipal), parameters.capture());
+		verify(this.session, times(1)).query(eq(save), isA(Map.class));
+		assertThat(parameters.getAllValues().get(0))
+				.containsEntry(OgmSessionRepository.PRINCIPAL_NAME, null);
+		assertThat(parameters.getAllValues().get(1))
+				.containsEntry(OgmSessionRepository.PRINCIPAL_NAME, "username");
+	}
+
+	@Test
+	public void findByIndexNameAndIndexValuePrincipalRelationships() {
+		this.repository.setPrincipalRelationships(true);
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willReturn(createSessionResult("testSessionId", 1L));
+
+		// Existing sessions may not be linked yet, the property is matched until they are
+		this.repository.findByIndexNameAndIndexValue(
+				FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "username");
+
+		verify(this.session, times(1)).query(
+				eq("match (n:SPRING_SESSION) where n.principalName={principalName} "
+						+ "and (n.expiryTime is null or n.expiryTime > {now}) return n order by n.creationTime desc"),
+				isA(Map.class));
+
+		this.repository.cleanUpExpiredSessions();
+
+		Map<String, OgmSessionRepository.OgmSession> sessions = this.repository
+				.findByIndexNameAndIndexValue(
+						FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "username");
+
+		assertThat(sessions).containsOnlyKeys("testSessionId");
+		verify(this.session, times(1)).query(
+				eq("match (:SPRING_SESSION_PRINCIPAL {name:{principalName}})-[:HAS_SESSION]->(n:SPRING_SESSION) "
+						+ "where n.expiryTime is null or n.expiryTime > {now} return n order by n.creationTime desc"),
+				isA(Map.class));
+	}
+
+	@Test
+	public void cleanupLinksExistingSessionsToPrincipalsInBatches() {
+		this.repository.setPrincipalRelationships(true);
+		this.repository.setCleanupBatchSize(2);
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willReturn(new QueryResultModel(new ArrayList<>(), new QueryStatisticsModel()));
+
+		String linkQuery = OgmSessionRepository.LINK_PRINCIPALS_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		given(this.session.query(eq(linkQuery), isA(Map.class)))
+				.willReturn(createLinkedResult(2), createLinkedResult(1));
+
+		this.repository.cleanUpExpiredSessions();
+		this.repository.cleanUpExpiredSessions();
+
+		verify(this.session, times(2)).query(eq(linkQuery), isA(Map.class));
+	}
+
+	@Test
+	public void deleteByIds() {
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willReturn(createDeletedIdsResult("1", "2"));
+
+		int deleted = this.repository.deleteByIds(Arrays.asList("1", "2", "3"));
+
+		assertThat(deleted).isEqualTo(2);
+		ArgumentCaptor<Map> parameters = ArgumentCaptor.forClass(Map.class);
+		verify(this.session, times(1)).query(
+				eq("unwind {sessionIds} as sessionId match (n:SPRING_SESSION) where n.sessionId=sessionId "
+						+ "detach delete n return sessionId"),
+				parameters.capture());
+		assertThat(parameters.getValue()).containsEntry(OgmSessionRepository.SESSION_IDS,
+				Arrays.asList("1", "2", "3"));
+		verifyCounts(1);
+	}
+
+	@Test
+	public void deleteByIdsEmpty() {
+		assertThat(this.repository.deleteByIds(Collections.emptyList())).isEqualTo(0);
+
+		verifyZeroInteractions(this.sessionFactory);
+	}
+
+	@Test
+	public void deleteByPrincipalNameInvalidatesCachedSessions() {
+		OgmSessionCache sessionCache = new OgmSessionCache();
+		this.repository.setSessionCache(sessionCache);
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willReturn(createSessionResult("testSessionId", 1L), createDeletedIdsResult("testSessionId"));
+		this.repository.getSession("testSessionId");
+
+		int deleted = this.repository.deleteByPrincipalName("username");
+
+		assertThat(deleted).isEqualTo(1);
+		assertThat(sessionCache.size()).isEqualTo(0);
+		verify(this.session, times(1)).query(
+				eq(OgmSessionRepository.DELETE_SESSIONS_BY_PRINCIPAL_NAME_QUERY.replace("%LABEL%",
+						OgmSessionRepository.DEFAULT_LABEL)),
+				isA(Map.class));
+	}
+
+	@Test
+	public void deleteByPrincipalNamePrincipalRelationshipsDeletesUnlinkedSessions() {
+		this.repository.setPrincipalRelationships(true);
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willReturn(createDeletedIdsResult("linked", "unlinked"), createDeletedResult(1));
+
+		int deleted = this.repository.deleteByPrincipalName("username");
+
+		assertThat(deleted).isEqualTo(2);
+		verify(this.session, times(1)).query(
+				eq("match (n:SPRING_SESSION) where n.principalName in {principalNames} "
+						+ "with n, n.sessionId as sessionId detach delete n return sessionId"),
+				isA(Map.class));
+		verify(this.session, times(1)).query(
+				eq("match (p:SPRING_SESSION_PRINCIPAL) where p.name in {principalNames} "
+						+ "and not (p)-[:HAS_SESSION]->() delete p"),
+				isA(Map.class));
+	}
+
+	@Test
+	public void resolvePrincipalSecurityContext() {
+		MapSession session = new MapSession();
+		Authentication authentication = new UsernamePasswordAuthenticationToken("username",
+				"notused", AuthorityUtils.createAuthorityList("ROLE_USER"));
+		session.setAttribute(SPRING_SECURITY_CONTEXT, new SecurityContextImpl(authentication));
+
+		assertThat(new OgmSessionRepository.PrincipalNameResolver().resolvePrincipal(session))
+				.isEqualTo("username");
+	}
+
+	@Test
+	public void getSessionUsesStoredPrincipalName() {
+		AtomicInteger deserializations = new AtomicInteger();
+		OgmSessionRepository repository = new OgmSessionRepository(this.sessionFactory) {
+
+			@Override
+			public Object deserialize(Object attributeValue) {
+				deserializations.incrementAndGet();
+				return super.deserialize(attributeValue);
+			}
+
+		};
+		Map<String, Object> properties = new HashMap<>();
+		long now = new Date().getTime();
+		properties.put(OgmSessionRepository.CREATION_TIME, now);
+		properties.put(OgmSessionRepository.LAST_ACCESS_TIME, now);
+		properties.put(OgmSessionRepository.MAX_INACTIVE_INTERVAL, 1800000L);
+		properties.put(OgmSessionRepository.PRINCIPAL_NAME, "username");
+		properties.put(OgmSessionRepository.ATTRIBUTE_KEY_PREFIX + SPRING_SECURITY_CONTEXT,
+				repository.serialize(new SecurityContextImpl()));
+		NodeModel nodeModel = new NodeModel();
+		nodeModel.setProperties(properties);
+		List<Map<String, Object>> r = new ArrayList<>();
+		r.add(Collections.singletonMap("n", nodeModel));
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willReturn(new QueryResultModel(r, new QueryStatisticsModel()));
+
+		OgmSessionRepository.OgmSession session = repository.getSession("testSessionId");
+
+		assertThat(session.getPrincipalName()).isEqualTo("username");
+		assertThat(deserializations.get()).isEqualTo(0);
+
+		session.setAttribute(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "other");
+
+		assertThat(session.getPrincipalName()).isEqualTo("other");
+	}
+
 	@Test
 	public void cleanupExpiredSessions() {
 		QueryStatisticsModel queryStatisticsModel = new QueryStatisticsModel();
@@ -627,18 +1031,938 @@ public class OgmSessionRepositoryTests {
 		
 		this.repository.cleanUpExpiredSessions();
 
+		verifyCounts(2);
+		verifyNoMoreInteractions(this.sessionFactory);
+
+		String expectedQuery = OgmSessionRepository.MIGRATE_EXPIRY_TIME_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		verify(this.session, times(1)).query(eq(expectedQuery), isA(Map.class));
+
+		expectedQuery = OgmSessionRepository.DELETE_SESSIONS_BY_LAST_ACCESS_TIME_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		verify(this.session, times(1)).query(eq(expectedQuery), isA(Map.class));
+
+		this.repository.cleanUpExpiredSessions();
+
+		verifyCounts(3);
+		verify(this.session, times(2)).query(eq(expectedQuery), isA(Map.class));
+	}
+
+	@Test
+	public void cleanupExpiredSessionsChecksLastAccessedTime() {
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willReturn(new QueryResultModel(new ArrayList<>(), new QueryStatisticsModel()));
+
+		this.repository.cleanUpExpiredSessions();
+
+		// Nodes touched by versions that do not maintain expiryTime must survive
+		verify(this.session, times(1)).query(
+				eq("match (n:SPRING_SESSION) where n.expiryTime < {now} and n.maxInactiveInterval >= 0 "
+						+ "and n.lastAccessedTime + n.maxInactiveInterval < {now} "
+						+ "with n limit {batchSize} detach delete n"),
+				isA(Map.class));
+	}
+
+	@Test
+	public void cleanupExpiredSessionsInBatches() {
+		this.repository.setCleanupBatchSize(2);
+
+		String migrateQuery = OgmSessionRepository.MIGRATE_EXPIRY_TIME_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		given(this.session.query(eq(migrateQuery), isA(Map.class)))
+				.willReturn(new QueryResultModel(new ArrayList<>(), new QueryStatisticsModel()));
+
+		String deleteQuery = OgmSessionRepository.DELETE_SESSIONS_BY_LAST_ACCESS_TIME_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		given(this.session.query(eq(deleteQuery), isA(Map.class)))
+				.willReturn(createDeletedResult(2), createDeletedResult(2), createDeletedResult(1));
+
+		this.repository.cleanUpExpiredSessions();
+
+		verifyCounts(4);
+		verify(this.session, times(3)).query(eq(deleteQuery), isA(Map.class));
+	}
+
+	@Test
+	public void cleanupExpiredSessionsTimeBudgetExhausted() {
+		this.repository.setCleanupBatchSize(2);
+		this.repository.setCleanupTimeBudget(Duration.ofMillis(1));
+		this.repository.setCleanupBatchPause(Duration.ofMillis(5));
+
+		String migrateQuery = OgmSessionRepository.MIGRATE_EXPIRY_TIME_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		given(this.session.query(eq(migrateQuery), isA(Map.class)))
+				.willReturn(new QueryResultModel(new ArrayList<>(), new QueryStatisticsModel()));
+
+		String deleteQuery = OgmSessionRepository.DELETE_SESSIONS_BY_LAST_ACCESS_TIME_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		given(this.session.query(eq(deleteQuery), isA(Map.class)))
+				.willReturn(createDeletedResult(2));
+
+		this.repository.cleanUpExpiredSessions();
+
+		verify(this.session, atMost(2)).query(eq(deleteQuery), isA(Map.class));
+	}
+
+	@Test
+	public void cleanupMigrationTimeBudgetExhausted() {
+		this.repository.setCleanupBatchSize(2);
+		this.repository.setCleanupTimeBudget(Duration.ofMillis(1));
+		this.repository.setCleanupBatchPause(Duration.ofMillis(5));
+
+		String migrateQuery = OgmSessionRepository.MIGRATE_EXPIRY_TIME_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		given(this.session.query(eq(migrateQuery), isA(Map.class)))
+				.willReturn(createMigratedResult(2));
+
+		this.repository.cleanUpExpiredSessions();
+		this.repository.cleanUpExpiredSessions();
+
+		verify(this.session, atMost(4)).query(eq(migrateQuery), isA(Map.class));
+		String deleteQuery = OgmSessionRepository.DELETE_SESSIONS_BY_LAST_ACCESS_TIME_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		verify(this.session, never()).query(eq(deleteQuery), isA(Map.class));
+	}
+
+	@Test
+	public void cleanupExpiredSessionsLockHeldByOtherInstance() {
+		this.repository.setCleanupLock(true);
+
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willReturn(new QueryResultModel(new ArrayList<>(), new QueryStatisticsModel()));
+
+		this.repository.cleanUpExpiredSessions();
+
+		verifyCounts(1);
+		String expectedQuery = OgmSessionRepository.ACQUIRE_LOCK_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		verify(this.session, times(1)).query(eq(expectedQuery), isA(Map.class));
+	}
+
+	@Test
+	public void cleanupExpiredSessionsLockAcquired() {
+		this.repository.setCleanupLock(true);
+		this.repository.setLockOwner("testOwner");
+
+		String acquireLockQuery = OgmSessionRepository.ACQUIRE_LOCK_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		Map<String, Object> data = new HashMap<>();
+		data.put(OgmSessionRepository.LOCK_OWNER, "testOwner");
+		List<Map<String, Object>> r = new ArrayList<>();
+		r.add(data);
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willReturn(new QueryResultModel(new ArrayList<>(), new QueryStatisticsModel()));
+		given(this.session.query(eq(acquireLockQuery), isA(Map.class)))
+				.willReturn(new QueryResultModel(r, new QueryStatisticsModel()));
+
+		this.repository.cleanUpExpiredSessions();
+
+		verifyCounts(3);
+		String deleteQuery = OgmSessionRepository.DELETE_SESSIONS_BY_LAST_ACCESS_TIME_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		verify(this.session, times(1)).query(eq(deleteQuery), isA(Map.class));
+	}
+
+	@Test
+	public void cleanupExpiredSessionsAcquiresLockLease() {
+		this.repository.setCleanupLock(true);
+		this.repository.setLockOwner("owner1");
+		this.repository.setCleanupLockTimeToLive(Duration.ofMinutes(5));
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willReturn(new QueryResultModel(new ArrayList<>(), new QueryStatisticsModel()));
+		String acquireLockQuery = "merge (l:SPRING_SESSION_LOCK {name:{lockName}}) set l.lastAttempt = {now} "
+				+ "with l where l.owner is null or l.owner = {owner} or l.expiresAt < {now} "
+				+ "set l.owner = {owner}, l.expiresAt = {expiresAt} return l.owner as owner";
+		given(this.session.query(eq(acquireLockQuery), isA(Map.class))).willReturn(new QueryResultModel(
+				Collections.singletonList(Collections.singletonMap(OgmSessionRepository.LOCK_OWNER, "owner1")),
+				new QueryStatisticsModel()));
+
+		long before = System.currentTimeMillis();
+		this.repository.cleanUpExpiredSessions();
+		long after = System.currentTimeMillis();
+
+		ArgumentCaptor<Map> parameters = ArgumentCaptor.forClass(Map.class);
+		verify(this.session, times(1)).query(eq(acquireLockQuery), parameters.capture());
+		Map<String, Object> lockParameters = parameters.getValue();
+		assertThat(lockParameters).containsEntry(OgmSessionRepository.LOCK_NAME, OgmSessionRepository.CLEANUP_LOCK_NAME)
+				.containsEntry(OgmSessionRepository.LOCK_OWNER, "owner1");
+		long now = (Long) lockParameters.get(OgmSessionRepository.NOW);
+		assertThat(now).isBetween(before, after);
+		assertThat(lockParameters).containsEntry(OgmSessionRepository.LOCK_EXPIRES_AT,
+				now + Duration.ofMinutes(5).toMillis());
+		String deleteQuery = OgmSessionRepository.DELETE_SESSIONS_BY_LAST_ACCESS_TIME_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		verify(this.session, times(1)).query(eq(deleteQuery), isA(Map.class));
+	}
+
+	@Test
+	public void cleanupLockCreatesConstraintWithoutSchemaInitialization() {
+		this.repository.setCleanupLock(true);
+
+		this.repository.afterPropertiesSet();
+
 		verifyCounts(1);
+		verify(this.session, times(1)).query(
+				eq("create constraint on (n:SPRING_SESSION) assert n.sessionId is unique"), isA(Map.class));
+		verify(this.session, times(1)).query(
+				eq("create constraint on (l:SPRING_SESSION_LOCK) assert l.name is unique"), isA(Map.class));
+	}
+
+	@Test
+	public void saveNeverExpiringSessionRemovesExpiryTime() {
+		OgmSessionRepository.OgmSession session = this.repository.createSession();
+		this.repository.save(session);
+
+		session.setMaxInactiveInterval(Duration.ofSeconds(-1));
+		this.repository.save(session);
+
+		ArgumentCaptor<Map> parameters = ArgumentCaptor.forClass(Map.class);
+		verify(this.session, times(2)).query(isA(String.class), parameters.capture());
+		assertThat(getNodeProperties(parameters.getAllValues().get(1)))
+				.containsEntry(OgmSessionRepository.EXPIRY_TIME, null);
+	}
+
+	@Test
+	public void saveRemovedAttributeRemovesProperty() {
+		OgmSessionRepository.OgmSession session = this.repository.createSession();
+		session.setAttribute("testName", "testValue");
+		this.repository.save(session);
+
+		session.removeAttribute("testName");
+		this.repository.save(session);
+
+		ArgumentCaptor<Map> parameters = ArgumentCaptor.forClass(Map.class);
+		verify(this.session, times(2)).query(isA(String.class), parameters.capture());
+		assertThat(parameters.getAllValues().get(1))
+				.containsEntry(OgmSessionRepository.SESSION_ID, session.getId());
+		assertThat(getNodeProperties(parameters.getAllValues().get(1)))
+				.containsEntry(OgmSessionRepository.ATTRIBUTE_KEY_PREFIX + "testName", null);
+	}
+
+	@Test
+	public void saveRemovedAttributesBatched() {
+		OgmSessionRepository.OgmSession session = this.repository.createSession();
+		session.setAttribute("step1", new ArrayList<>(Arrays.asList("a", "b")));
+		session.setAttribute("step2", "b");
+		session.setAttribute("step3", "c");
+		this.repository.save(session);
+
+		session.removeAttribute("step1");
+		session.setAttribute("step2", null);
+		session.removeAttribute("step3");
+		session.setAttribute("step3", "d");
+		this.repository.save(session);
+
+		ArgumentCaptor<Map> parameters = ArgumentCaptor.forClass(Map.class);
+		verify(this.session, times(2)).query(isA(String.class), parameters.capture());
+		assertThat(getNodeProperties(parameters.getAllValues().get(1)))
+				.containsEntry(OgmSessionRepository.ATTRIBUTE_KEY_PREFIX + "step1", null)
+				.containsEntry(OgmSessionRepository.ATTRIBUTE_KEY_PREFIX + "step2", null)
+				.containsEntry(OgmSessionRepository.ATTRIBUTE_KEY_PREFIX + "step3", "d");
+		assertThat(session.getRemovedAttributes()).isEmpty();
+	}
+
+	@Test
+	public void saveNewSessionWithRemovedAttribute() {
+		OgmSessionRepository.OgmSession session = this.repository.createSession();
+		session.setAttribute("testName", "testValue");
+		session.removeAttribute("testName");
+
+		this.repository.save(session);
+
+		ArgumentCaptor<Map> parameters = ArgumentCaptor.forClass(Map.class);
+		verify(this.session, times(1)).query(isA(String.class), parameters.capture());
+		assertThat(getNodeProperties(parameters.getValue()))
+				.doesNotContainKey(OgmSessionRepository.ATTRIBUTE_KEY_PREFIX + "testName");
+		assertThat(session.getRemovedAttributes()).isEmpty();
+	}
+
+	@Test
+	public void initializeSchema() {
+		this.repository.setLabel("TEST_SESSION");
+		this.repository.setInitializeSchema(true);
+
+		this.repository.afterPropertiesSet();
+
+		verifyCounts(3);
+		verify(this.session, times(1)).query(
+				eq("create constraint on (n:TEST_SESSION) assert n.sessionId is unique"), isA(Map.class));
+		verify(this.session, times(1)).query(
+				eq("create index on :TEST_SESSION(principalName)"), isA(Map.class));
+		verify(this.session, times(1)).query(
+				eq("create index on :TEST_SESSION(expiryTime)"), isA(Map.class));
+	}
+
+	@Test
+	public void initializeSchemaDisabledCreatesSessionIdConstraint() {
+		this.repository.afterPropertiesSet();
+
+		verifyCounts(1);
+		verify(this.session, times(1)).query(
+				eq("create constraint on (n:SPRING_SESSION) assert n.sessionId is unique"), isA(Map.class));
+		verify(this.session, never()).query(
+				eq("create index on :SPRING_SESSION(principalName)"), isA(Map.class));
+	}
+
+	@Test
+	public void getSessionUsesReadOnlyTransaction() {
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willReturn(new QueryResultModel(new ArrayList<>(), new QueryStatisticsModel()));
+
+		this.repository.getSession("testSessionId");
+
+		verify(this.session, times(1)).beginTransaction(Transaction.Type.READ_ONLY);
+	}
+
+	@Test
+	public void deleteUsesReadWriteTransaction() {
+		this.repository.delete("testSessionId");
+
+		verify(this.session, times(1)).beginTransaction(Transaction.Type.READ_WRITE);
+	}
+
+	@Test
+	public void getSessionAutoCommitRead() {
+		OgmCypherExecutionStrategy executionStrategy = new OgmCypherExecutionStrategy(this.sessionFactory);
+		executionStrategy.setAutoCommitReads(true);
+		this.repository.setExecutionStrategy(executionStrategy);
+
+		given(this.session.query(isA(String.class), isA(Map.class), eq(true)))
+				.willReturn(new QueryResultModel(new ArrayList<>(), new QueryStatisticsModel()));
+
+		OgmSessionRepository.OgmSession session = this.repository.getSession("testSessionId");
+
+		assertThat(session).isNull();
+		verify(this.sessionFactory, times(1)).openSession();
+		verify(this.session, times(0)).beginTransaction(any(Transaction.Type.class));
+		verifyZeroInteractions(this.transaction);
+	}
+
+	@Test
+	public void setExecutionStrategyNull() {
+		this.thrown.expect(IllegalArgumentException.class);
+		this.thrown.expectMessage("executionStrategy must not be null");
+
+		this.repository.setExecutionStrategy(null);
+	}
+
+	@Test
+	public void getSessionBoltDriver() {
+		Driver driver = mock(Driver.class);
+		org.neo4j.driver.v1.Session driverSession = mock(org.neo4j.driver.v1.Session.class);
+		StatementResult statementResult = mock(StatementResult.class);
+		Record record = mock(Record.class);
+		ResultSummary resultSummary = mock(ResultSummary.class);
+		long now = new Date().getTime();
+		Map<String, Value> properties = new HashMap<>();
+		properties.put(OgmSessionRepository.SESSION_ID, Values.value("testSessionId"));
+		properties.put(OgmSessionRepository.CREATION_TIME, Values.value(now));
+		properties.put(OgmSessionRepository.LAST_ACCESS_TIME, Values.value(now));
+		properties.put(OgmSessionRepository.MAX_INACTIVE_INTERVAL, Values.value(1800000L));
+		properties.put(OgmSessionRepository.ATTRIBUTE_KEY_PREFIX + "roles",
+				Values.value(Arrays.asList("admin", "user")));
+		Map<String, Object> row = new HashMap<>();
+		row.put("n", new InternalNode(1L, Collections.singletonList("SPRING_SESSION"), properties));
+		given(driver.session(AccessMode.READ)).willReturn(driverSession);
+		given(driverSession.run(isA(String.class), isA(Map.class))).willReturn(statementResult);
+		given(statementResult.hasNext()).willReturn(true, false);
+		given(statementResult.next()).willReturn(record);
+		given(record.asMap()).willReturn(row);
+		given(statementResult.consume()).willReturn(resultSummary);
+		given(resultSummary.counters()).willReturn(mock(SummaryCounters.class));
+
+		OgmSessionRepository.OgmSession session = new BoltSessionRepository(driver)
+				.getSession("testSessionId");
+
+		assertThat(session.getId()).isEqualTo("testSessionId");
+		assertThat(session.getMaxInactiveInterval()).isEqualTo(Duration.ofMinutes(30));
+		assertThat(session.<String[]>getAttribute("roles").get())
+				.containsExactly("admin", "user");
+		verify(driverSession, times(1)).close();
 		verifyNoMoreInteractions(this.sessionFactory);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void cleanupBoltDriverLinksPrincipalsInBatches() {
+		Driver driver = mock(Driver.class);
+		org.neo4j.driver.v1.Session driverSession = mock(org.neo4j.driver.v1.Session.class);
+		StatementResult statementResult = mock(StatementResult.class);
+		StatementResult linkResult = mock(StatementResult.class);
+		ResultSummary resultSummary = mock(ResultSummary.class);
+		ResultSummary linkSummary = mock(ResultSummary.class);
+		SummaryCounters linkCounters = mock(SummaryCounters.class);
+		String linkQuery = OgmSessionRepository.LINK_PRINCIPALS_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		given(driver.session(any(AccessMode.class))).willReturn(driverSession);
+		given(driverSession.run(isA(String.class), isA(Map.class))).willReturn(statementResult);
+		given(driverSession.run(eq(linkQuery), isA(Map.class))).willReturn(linkResult);
+		given(statementResult.consume()).willReturn(resultSummary);
+		given(resultSummary.counters()).willReturn(mock(SummaryCounters.class));
+		given(linkResult.consume()).willReturn(linkSummary);
+		given(linkSummary.counters()).willReturn(linkCounters);
+		given(linkCounters.relationshipsCreated()).willReturn(2, 2, 1);
+		BoltSessionRepository repository = new BoltSessionRepository(driver);
+		repository.setPrincipalRelationships(true);
+		repository.setCleanupBatchSize(2);
+
+		repository.cleanUpExpiredSessions();
+
+		verify(driverSession, times(3)).run(eq(linkQuery), isA(Map.class));
+	}
+
+	@Test
+	public void saveNewRecordsMetrics() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		this.repository.setMetrics(new MicrometerOgmSessionMetrics(registry,
+				OgmSessionRepository.DEFAULT_LABEL));
+		OgmSessionRepository.OgmSession session = this.repository.createSession();
+		session.setAttribute("testName", new ArrayList<>(Arrays.asList("a", "b")));
+
+		this.repository.save(session);
+
+		assertThat(registry.get("spring.session.neo4j.operations")
+				.tags("label", OgmSessionRepository.DEFAULT_LABEL, "operation", "create", "outcome", "success")
+				.timer().count()).isEqualTo(1);
+		assertThat(registry.get("spring.session.neo4j.save.properties").summary().totalAmount())
+				.isEqualTo(5);
+		assertThat(registry.get("spring.session.neo4j.save.serialized").summary().totalAmount())
+				.isGreaterThan(0);
+	}
+
+	@Test
+	public void getSessionExpiredRecordsMetrics() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		this.repository.setMetrics(new MicrometerOgmSessionMetrics(registry,
+				OgmSessionRepository.DEFAULT_LABEL));
+		NodeModel nodeModel = new NodeModel();
+		Map<String, Object> properties = new HashMap<>();
+		properties.put(OgmSessionRepository.CREATION_TIME, 0L);
+		properties.put(OgmSessionRepository.LAST_ACCESS_TIME, 0L);
+		properties.put(OgmSessionRepository.MAX_INACTIVE_INTERVAL, 1L);
+		nodeModel.setProperties(properties);
+		Map<String, Object> data = new HashMap<>();
+		data.put("n", nodeModel);
+		List<Map<String, Object>> r = new ArrayList<>();
+		r.add(data);
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willReturn(new QueryResultModel(r, new QueryStatisticsModel()));
+
+		assertThat(this.repository.getSession("testSessionId")).isNull();
+
+		assertThat(registry.get("spring.session.neo4j.expired.reads").counter().count())
+				.isEqualTo(1);
+		assertThat(registry.get("spring.session.neo4j.operations")
+				.tags("operation", "delete", "outcome", "success").timer().count()).isEqualTo(1);
+	}
+
+	@Test
+	public void deleteFailureRecordsRollback() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		this.repository.setMetrics(new MicrometerOgmSessionMetrics(registry,
+				OgmSessionRepository.DEFAULT_LABEL));
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willThrow(new IllegalStateException("Connection lost"));
+
+		try {
+			this.repository.delete("testSessionId");
+		} catch (RuntimeException e) {
+			assertThat(e).hasRootCauseInstanceOf(IllegalStateException.class);
+		}
+
+		verify(this.transaction, times(1)).rollback();
+		assertThat(registry.get("spring.session.neo4j.rollbacks").counter().count())
+				.isEqualTo(1);
+		assertThat(registry.get("spring.session.neo4j.operations")
+				.tags("operation", "delete", "outcome", "failure").timer().count()).isEqualTo(1);
+	}
+
+	@Test
+	public void sessionReusedUntilStatementFails() {
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willReturn(new QueryResultModel(new ArrayList<>(), new QueryStatisticsModel()))
+				.willThrow(new IllegalStateException("Connection lost"))
+				.willReturn(new QueryResultModel(new ArrayList<>(), new QueryStatisticsModel()));
+
+		this.repository.delete("testSessionId");
+		try {
+			this.repository.delete("testSessionId");
+		} catch (RuntimeException e) {
+			assertThat(e).hasRootCauseInstanceOf(IllegalStateException.class);
+		}
+		this.repository.delete("testSessionId");
+
+		verify(this.sessionFactory, times(2)).openSession();
+		verify(this.session, times(3)).clear();
+	}
+
+	@Test
+	public void destroyReleasesThreadSessions() throws Exception {
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willReturn(new QueryResultModel(new ArrayList<>(), new QueryStatisticsModel()));
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			executor.submit(() -> this.repository.delete("testSessionId")).get();
+			this.repository.delete("testSessionId");
+
+			this.repository.destroy();
+
+			this.repository.delete("testSessionId");
+			executor.submit(() -> this.repository.delete("testSessionId")).get();
+		} finally {
+			executor.shutdown();
+		}
+
+		verify(this.sessionFactory, times(4)).openSession();
+	}
+
+	@Test
+	public void serializeJackson() {
+		ArrayList<String> value = new ArrayList<>(Arrays.asList("a", "b"));
+		this.repository.setAttributeSerializer(new JacksonSessionAttributeSerializer("org.springframework.session.data.neo4j"));
+
+		byte[] bytes = this.repository.serialize(value);
+
+		assertThat(bytes[0]).isEqualTo(JacksonSessionAttributeSerializer.FORMAT);
+		assertThat(this.repository.deserialize(bytes)).isEqualTo(value);
+	}
+
+	@Test
+	public void deserializeJacksonUntrustedType() {
+		this.repository.setAttributeSerializer(new JacksonSessionAttributeSerializer("org.springframework.session.data.neo4j"));
+		byte[] bytes = this.repository.serialize(URI.create("http://localhost"));
+
+		this.thrown.expectMessage("Attribute type java.net.URI is not in a trusted package");
+
+		this.repository.deserialize(bytes);
+	}
+
+	@Test
+	public void deserializeKryoUntrustedType() {
+		this.repository.setAttributeSerializer(new KryoSessionAttributeSerializer());
+		byte[] bytes = this.repository.serialize(URI.create("http://localhost"));
+
+		this.thrown.expectMessage("Attribute type java.net.URI is not in a trusted package");
+
+		this.repository.deserialize(bytes);
+	}
+
+	@Test
+	public void deserializeKryoTrustedPackage() {
+		KryoSessionAttributeSerializer serializer = new KryoSessionAttributeSerializer();
+		serializer.setTrustedPackages(Collections.singletonList("org.springframework.security"));
+		this.repository.setAttributeSerializer(serializer);
+		SecurityContextImpl value = new SecurityContextImpl(new UsernamePasswordAuthenticationToken(
+				"username", "password", AuthorityUtils.createAuthorityList("ROLE_USER")));
+
+		byte[] bytes = this.repository.serialize(value);
+
+		assertThat(this.repository.deserialize(bytes)).isEqualTo(value);
+	}
+
+	@Test
+	public void serializeKryoRegisteredClasses() {
+		Date value = new Date();
+		KryoSessionAttributeSerializer unregistered = new KryoSessionAttributeSerializer();
+		KryoSessionAttributeSerializer registered = new KryoSessionAttributeSerializer();
+		registered.setRegisteredClasses(Collections.singletonList(Date.class));
+
+		this.repository.setAttributeSerializer(unregistered);
+		byte[] unregisteredBytes = this.repository.serialize(value);
+		this.repository.setAttributeSerializer(registered);
+		byte[] registeredBytes = this.repository.serialize(value);
+
+		assertThat(registeredBytes[0]).isEqualTo(KryoSessionAttributeSerializer.FORMAT);
+		assertThat(registeredBytes.length).isLessThan(unregisteredBytes.length);
+		assertThat(this.repository.deserialize(registeredBytes)).isEqualTo(value);
+	}
+
+	@Test
+	public void deserializeJdkAfterFormatChange() {
+		ArrayList<String> value = new ArrayList<>(Arrays.asList("a", "b"));
+		byte[] bytes = this.repository.serialize(value);
+		this.repository.setAttributeSerializer(new KryoSessionAttributeSerializer());
+
+		assertThat(bytes[0]).isEqualTo(JdkSessionAttributeSerializer.FORMAT);
+		assertThat(this.repository.deserialize(bytes)).isEqualTo(value);
+	}
+
+	@Test
+	public void deserializeUnknownFormat() {
+		this.repository.setAttributeSerializer(new JacksonSessionAttributeSerializer("org.springframework.session.data.neo4j"));
+		byte[] bytes = this.repository.serialize(new ArrayList<>(Arrays.asList("a", "b")));
+		this.repository.setAttributeSerializer(new KryoSessionAttributeSerializer());
+
+		this.thrown.expectMessage("No serializer registered for format marker 1");
+
+		this.repository.deserialize(bytes);
+	}
+
+	@Test
+	public void serializeCompressedAboveThreshold() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		this.repository.setMetrics(new MicrometerOgmSessionMetrics(registry,
+				OgmSessionRepository.DEFAULT_LABEL));
+		this.repository.setAttributeCompressor(
+				new AttributeCompressor(AttributeCompressor.Algorithm.DEFLATE));
+		String value = new String(new char[4096]).replace('\0', 'a');
+
+		byte[] bytes = this.repository.serialize(value);
+
+		assertThat(AttributeCompressor.isCompressed(bytes)).isTrue();
+		assertThat(bytes.length).isLessThan(4096);
+		assertThat(this.repository.deserialize(bytes)).isEqualTo(value);
+		assertThat(registry.get("spring.session.neo4j.compression").timer().count()).isEqualTo(1);
+		assertThat(registry.get("spring.session.neo4j.compression.ratio").summary().max())
+				.isLessThan(1);
+	}
 
-		String expectedQuery = OgmSessionRepository.DELETE_SESSIONS_BY_LAST_ACCESS_TIME_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+	@Test
+	public void serializeBelowThresholdNotCompressed() {
+		this.repository.setAttributeCompressor(
+				new AttributeCompressor(AttributeCompressor.Algorithm.DEFLATE));
+
+		byte[] bytes = this.repository.serialize("a");
+
+		assertThat(bytes[0]).isEqualTo(JdkSessionAttributeSerializer.FORMAT);
+		assertThat(this.repository.deserialize(bytes)).isEqualTo("a");
+	}
+
+	@Test
+	public void deserializeCompressedAfterCompressionStopped() {
+		String value = new String(new char[4096]).replace('\0', 'a');
+		this.repository.setAttributeCompressor(
+				new AttributeCompressor(AttributeCompressor.Algorithm.DEFLATE, 0));
+		byte[] bytes = this.repository.serialize(value);
+		this.repository.setAttributeCompressor(
+				new AttributeCompressor(AttributeCompressor.Algorithm.DEFLATE, Integer.MAX_VALUE));
+
+		assertThat(AttributeCompressor.isCompressed(this.repository.serialize(value))).isFalse();
+		assertThat(this.repository.deserialize(bytes)).isEqualTo(value);
+	}
+
+	@Test
+	public void deserializeCompressionHeaderWithoutCompressor() {
+		byte[] bytes = new byte[] { (byte) 0xCE, 1, 0, 0, 0, 1, 0 };
+		GenericConversionService conversionService = new GenericConversionService();
+		conversionService.addConverter(byte[].class, Object.class, source -> source.length);
+		this.repository.setConversionService(conversionService);
+
+		assertThat(this.repository.deserialize(bytes)).isEqualTo(bytes.length);
+	}
+
+	@Test
+	public void deserializeCompressedInvalidLength() {
+		this.repository.setAttributeCompressor(
+				new AttributeCompressor(AttributeCompressor.Algorithm.DEFLATE));
+		byte[] bytes = new byte[] { (byte) 0xCE, 1, 0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0 };
+
+		this.thrown.expect(IllegalStateException.class);
+		this.thrown.expectMessage("invalid length " + Integer.MAX_VALUE);
+
+		this.repository.deserialize(bytes);
+	}
+
+	@Test
+	public void attributeSerializerCompressionMarkerReserved() {
+		SessionAttributeSerializer serializer = mock(SessionAttributeSerializer.class);
+		given(serializer.getFormat()).willReturn((byte) 0xCE);
+
+		this.thrown.expect(IllegalArgumentException.class);
+		this.thrown.expectMessage("Format marker 0xCE is reserved for compressed values");
+
+		this.repository.setAttributeSerializer(serializer);
+	}
+
+	@Test
+	public void saveTouchOnlyWriteBehind() {
+		this.repository.setWriteBehind(true);
+
+		OgmSessionRepository.OgmSession session = this.repository.createSession();
+		this.repository.save(session);
+		verifyCounts(1);
+
+		session.setLastAccessedTime(Instant.now().plusSeconds(1));
+		this.repository.save(session);
+		verifyCounts(1);
+
+		this.repository.flushLastAccessTimes();
+		verifyCounts(2);
+		verifyNoMoreInteractions(this.sessionFactory);
+
+		String expectedQuery = OgmSessionRepository.UPDATE_LAST_ACCESS_TIMES_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		verify(this.session, times(1)).query(eq(expectedQuery), isA(Map.class));
+
+		this.repository.flushLastAccessTimes();
+		verifyCounts(2);
+	}
+
+	@Test
+	public void saveTouchOnlyWriteBehindMaxBatchSize() {
+		this.repository.setWriteBehind(true);
+		this.repository.setWriteBehindMaxBatchSize(2);
+
+		OgmSessionRepository.OgmSession session1 = this.repository.createSession();
+		OgmSessionRepository.OgmSession session2 = this.repository.createSession();
+		this.repository.save(session1);
+		this.repository.save(session2);
+		verifyCounts(2);
+
+		session1.setLastAccessedTime(Instant.now().plusSeconds(1));
+		this.repository.save(session1);
+		verifyCounts(2);
+
+		session2.setLastAccessedTime(Instant.now().plusSeconds(1));
+		this.repository.save(session2);
+		verifyCounts(3);
+
+		String expectedQuery = OgmSessionRepository.UPDATE_LAST_ACCESS_TIMES_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
 		verify(this.session, times(1)).query(eq(expectedQuery), isA(Map.class));
 	}
 
+	@Test
+	public void saveWriteBehindChangedAttributes() {
+		this.repository.setWriteBehind(true);
+
+		OgmSessionRepository.OgmSession session = this.repository.createSession();
+		this.repository.save(session);
+
+		session.setAttribute("testName", "testValue");
+		this.repository.save(session);
+		verifyCounts(2);
+	}
+
+	@Test
+	public void getSessionDeserializesAttributesOnFirstAccess() {
+		AtomicInteger deserializations = new AtomicInteger();
+		this.repository = new OgmSessionRepository(this.sessionFactory) {
+
+			@Override
+			public Object deserialize(Object attributeValue) {
+				deserializations.incrementAndGet();
+				return super.deserialize(attributeValue);
+			}
+
+		};
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willReturn(createSessionResult("testSessionId", 1L));
+
+		OgmSessionRepository.OgmSession session = this.repository.getSession("testSessionId");
+
+		assertThat(session.getAttributeNames()).containsExactly("color");
+		assertThat(deserializations.get()).isEqualTo(0);
+		assertThat(session.<String>getAttribute("color").orElse(null)).isEqualTo("blue");
+		assertThat(session.<String>getAttribute("color").orElse(null)).isEqualTo("blue");
+		assertThat(deserializations.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void getSessionCachedWithinStalenessWindow() {
+		OgmSessionCache sessionCache = new OgmSessionCache();
+		sessionCache.setStalenessWindow(Duration.ofMinutes(1));
+		this.repository.setSessionCache(sessionCache);
+
+		String sessionId = "testSessionId";
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willReturn(createSessionResult(sessionId, 1L));
+
+		OgmSessionRepository.OgmSession first = this.repository.getSession(sessionId);
+		OgmSessionRepository.OgmSession second = this.repository.getSession(sessionId);
+
+		assertThat(first).isNotNull();
+		assertThat(second).isNotNull();
+		assertThat(second).isNotSameAs(first);
+		assertThat(second.getId()).isEqualTo(sessionId);
+		assertThat(second.<String>getAttribute("color").orElse(null)).isEqualTo("blue");
+		assertThat(sessionCache.getMissCount()).isEqualTo(1);
+		assertThat(sessionCache.getHitCount()).isEqualTo(1);
+
+		verifyCounts(1);
+		verifyNoMoreInteractions(this.sessionFactory);
+	}
+
+	@Test
+	public void saveCachedSessionAttributeSerializedValueUnchanged() {
+		OgmSessionCache sessionCache = new OgmSessionCache();
+		sessionCache.setStalenessWindow(Duration.ofMinutes(1));
+		this.repository.setSessionCache(sessionCache);
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willReturn(new QueryResultModel(new ArrayList<>(), new QueryStatisticsModel()));
+		OgmSessionRepository.OgmSession created = this.repository.createSession();
+		created.setAttribute("cart", new ArrayList<>(Arrays.asList("a", "b")));
+		this.repository.save(created);
+
+		OgmSessionRepository.OgmSession session = this.repository.getSession(created.getId());
+		session.setAttribute("cart", new ArrayList<>(Arrays.asList("a", "b")));
+		this.repository.save(session);
+
+		assertThat(sessionCache.getHitCount()).isEqualTo(1);
+		ArgumentCaptor<Map> parameters = ArgumentCaptor.forClass(Map.class);
+		verify(this.session, times(2)).query(isA(String.class), parameters.capture());
+		assertThat(getNodeProperties(parameters.getAllValues().get(1)))
+				.doesNotContainKey(OgmSessionRepository.ATTRIBUTE_KEY_PREFIX + "cart");
+	}
+
+	@Test
+	public void getSessionCachedAttributeValuesNotShared() {
+		OgmSessionCache sessionCache = new OgmSessionCache();
+		sessionCache.setStalenessWindow(Duration.ofMinutes(1));
+		this.repository.setSessionCache(sessionCache);
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willReturn(new QueryResultModel(new ArrayList<>(), new QueryStatisticsModel()));
+		OgmSessionRepository.OgmSession created = this.repository.createSession();
+		List<String> cart = new ArrayList<>(Arrays.asList("a", "b"));
+		created.setAttribute("cart", cart);
+		created.setAttribute("roles", new String[] { "user" });
+		this.repository.save(created);
+
+		OgmSessionRepository.OgmSession first = this.repository.getSession(created.getId());
+		OgmSessionRepository.OgmSession second = this.repository.getSession(created.getId());
+		List<String> firstCart = first.<List<String>>getAttribute("cart").get();
+		firstCart.add("c");
+		String[] firstRoles = first.<String[]>getAttribute("roles").get();
+		firstRoles[0] = "admin";
+
+		assertThat(sessionCache.getHitCount()).isEqualTo(2);
+		assertThat(firstCart).isNotSameAs(cart);
+		assertThat(second.<List<String>>getAttribute("cart").get()).containsExactly("a", "b");
+		assertThat(second.<String[]>getAttribute("roles").get()).containsExactly("user");
+		assertThat(cart).containsExactly("a", "b");
+	}
+
+	@Test
+	public void getSessionCachedRevalidatedByVersion() {
+		OgmSessionCache sessionCache = new OgmSessionCache();
+		this.repository.setSessionCache(sessionCache);
+
+		String sessionId = "testSessionId";
+		String getSessionQuery = OgmSessionRepository.GET_SESSION_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		String getSessionVersionQuery = OgmSessionRepository.GET_SESSION_VERSION_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		given(this.session.query(eq(getSessionQuery), isA(Map.class)))
+				.willReturn(createSessionResult(sessionId, 1L));
+		given(this.session.query(eq(getSessionVersionQuery), isA(Map.class)))
+				.willReturn(createVersionResult(1L));
+
+		this.repository.getSession(sessionId);
+		OgmSessionRepository.OgmSession session = this.repository.getSession(sessionId);
+
+		assertThat(session).isNotNull();
+		assertThat(sessionCache.getMissCount()).isEqualTo(1);
+		assertThat(sessionCache.getHitCount()).isEqualTo(1);
+
+		verifyCounts(2);
+		verify(this.session, times(1)).query(eq(getSessionQuery), isA(Map.class));
+		verify(this.session, times(1)).query(eq(getSessionVersionQuery), isA(Map.class));
+	}
+
+	@Test
+	public void getSessionCachedVersionChanged() {
+		OgmSessionCache sessionCache = new OgmSessionCache();
+		this.repository.setSessionCache(sessionCache);
+
+		String sessionId = "testSessionId";
+		String getSessionQuery = OgmSessionRepository.GET_SESSION_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		String getSessionVersionQuery = OgmSessionRepository.GET_SESSION_VERSION_QUERY.replace("%LABEL%", OgmSessionRepository.DEFAULT_LABEL);
+		given(this.session.query(eq(getSessionQuery), isA(Map.class)))
+				.willReturn(createSessionResult(sessionId, 1L));
+		given(this.session.query(eq(getSessionVersionQuery), isA(Map.class)))
+				.willReturn(createVersionResult(2L));
+
+		this.repository.getSession(sessionId);
+		OgmSessionRepository.OgmSession session = this.repository.getSession(sessionId);
+
+		assertThat(session).isNotNull();
+		assertThat(sessionCache.getMissCount()).isEqualTo(2);
+		assertThat(sessionCache.getHitCount()).isEqualTo(0);
+
+		verifyCounts(3);
+		verify(this.session, times(2)).query(eq(getSessionQuery), isA(Map.class));
+	}
+
+	@Test
+	public void deleteInvalidatesCachedSession() {
+		OgmSessionCache sessionCache = new OgmSessionCache();
+		this.repository.setSessionCache(sessionCache);
+
+		String sessionId = "testSessionId";
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willReturn(createSessionResult(sessionId, 1L));
+
+		this.repository.getSession(sessionId);
+		assertThat(sessionCache.size()).isEqualTo(1);
+
+		this.repository.delete(sessionId);
+		assertThat(sessionCache.size()).isEqualTo(0);
+	}
+
+	@Test
+	public void saveChangedSessionIdRekeysCachedSession() {
+		OgmSessionCache sessionCache = new OgmSessionCache();
+		this.repository.setSessionCache(sessionCache);
+		String sessionId = "testSessionId";
+		given(this.session.query(isA(String.class), isA(Map.class)))
+				.willReturn(createSessionResult(sessionId, 1L), createVersionResult(2L));
+		OgmSessionRepository.OgmSession session = this.repository.getSession(sessionId);
+
+		String changedId = session.changeSessionId();
+		this.repository.save(session);
+
+		assertThat(sessionCache.size()).isEqualTo(1);
+		assertThat(sessionCache.get(sessionId)).isNull();
+		assertThat(sessionCache.get(changedId).getVersion()).isEqualTo(2L);
+	}
+
+	private Result createSessionResult(String sessionId, long version) {
+		NodeModel nodeModel = new NodeModel();
+		Map<String, Object> properties = new HashMap<>();
+		long now = new Date().getTime();
+		properties.put(OgmSessionRepository.SESSION_ID, sessionId);
+		properties.put(OgmSessionRepository.CREATION_TIME, now);
+		properties.put(OgmSessionRepository.LAST_ACCESS_TIME, now);
+		properties.put(OgmSessionRepository.MAX_INACTIVE_INTERVAL, 1800000L);
+		properties.put(OgmSessionRepository.VERSION, version);
+		properties.put(OgmSessionRepository.ATTRIBUTE_KEY_PREFIX + "color", this.repository.serialize("blue"));
+		nodeModel.setProperties(properties);
+
+		Map<String, Object> data = new HashMap<>();
+		data.put("n", nodeModel);
+		List<Map<String, Object>> r = new ArrayList<>();
+		r.add(data);
+		return new QueryResultModel(r, new QueryStatisticsModel());
+	}
+
+	private Result createDeletedIdsResult(String... sessionIds) {
+		List<Map<String, Object>> r = new ArrayList<>();
+		for (String sessionId : sessionIds) {
+			r.add(Collections.singletonMap(OgmSessionRepository.SESSION_ID, sessionId));
+		}
+		return new QueryResultModel(r, new QueryStatisticsModel());
+	}
+
+	private Result createLinkedResult(int relationshipsCreated) {
+		QueryStatisticsModel queryStatisticsModel = new QueryStatisticsModel();
+		queryStatisticsModel.setRelationships_created(relationshipsCreated);
+		return new QueryResultModel(new ArrayList<>(), queryStatisticsModel);
+	}
+
+	private Result createMigratedResult(int propertiesSet) {
+		QueryStatisticsModel queryStatisticsModel = new QueryStatisticsModel();
+		queryStatisticsModel.setProperties_set(propertiesSet);
+		return new QueryResultModel(new ArrayList<>(), queryStatisticsModel);
+	}
+
+	private Result createDeletedResult(int nodesDeleted) {
+		QueryStatisticsModel queryStatisticsModel = new QueryStatisticsModel();
+		queryStatisticsModel.setNodes_deleted(nodesDeleted);
+		return new QueryResultModel(new ArrayList<>(), queryStatisticsModel);
+	}
+
+	private Result createVersionResult(long version) {
+		Map<String, Object> data = new HashMap<>();
+		data.put(OgmSessionRepository.VERSION, version);
+		List<Map<String, Object>> r = new ArrayList<>();
+		r.add(data);
+		return new QueryResultModel(r, new QueryStatisticsModel());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> getNodeProperties(Map<?, ?> parameters) {
+		return (Map<String, Object>) parameters.get(OgmSessionRepository.NODE_PROPERTEIS);
+	}
+
 	protected void verifyCounts(int count) {
 		verify(this.transaction, times(count)).close();
 		verify(this.transaction, times(count)).commit();
-		verify(this.session, times(count)).beginTransaction();
-		verify(this.sessionFactory, times(count)).openSession();
+		verify(this.session, times(count)).beginTransaction(any(Transaction.Type.class));
+		// The thread opens one session and reuses it for every statement
+		verify(this.sessionFactory, times(Math.min(count, 1))).openSession();
 	}
 
 }
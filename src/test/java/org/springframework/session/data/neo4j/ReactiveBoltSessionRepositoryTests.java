@@ -0,0 +1,183 @@
+/*
+ * Copyright 2014-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.session.data.neo4j;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.neo4j.driver.internal.InternalNode;
+import org.neo4j.driver.v1.AccessMode;
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.Record;
+import org.neo4j.driver.v1.Session;
+import org.neo4j.driver.v1.StatementResultCursor;
+import org.neo4j.driver.v1.Value;
+import org.neo4j.driver.v1.Values;
+import org.springframework.session.data.neo4j.OgmSessionRepository.OgmSession;
+
+import reactor.test.StepVerifier;
+
+/**
+ * Tests for {@link ReactiveBoltSessionRepository}.
+ *
+ * @author Eric Spiegelberg
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ReactiveBoltSessionRepositoryTests {
+
+	@Mock
+	private Driver driver;
+
+	@Mock
+	private Session session;
+
+	@Mock
+	private StatementResultCursor cursor;
+
+	private ReactiveBoltSessionRepository repository;
+
+	@Before
+	public void setUp() {
+		this.repository = new ReactiveBoltSessionRepository(this.driver);
+	}
+
+	@Test
+	public void saveNewSession() {
+		givenRecords(new ArrayList<>());
+		OgmSession session = this.repository.createSession().block();
+
+		StepVerifier.create(this.repository.save(session)).verifyComplete();
+
+		verify(this.driver, times(1)).session(AccessMode.WRITE);
+		verify(this.session, times(1)).runAsync(
+				eq("merge (n:SPRING_SESSION {sessionId:{sessionId}}) on create set n.creationTime={creationTime}, "
+						+ "n.principalName={principalName}, n.maxInactiveInterval={maxInactiveInterval} "
+						+ "set n += {nodeProperties}, n.version = coalesce(n.version, 0) + 1 return n.version as version"),
+				isA(Map.class));
+		verify(this.session, times(1)).closeAsync();
+		assertThat(session.hasChanges()).isFalse();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void saveNewSessionWithAttributeSerializerAndCompressor() {
+		givenRecords(new ArrayList<>());
+		this.repository.setAttributeSerializer(new KryoSessionAttributeSerializer());
+		this.repository.setAttributeCompressor(
+				new AttributeCompressor(AttributeCompressor.Algorithm.DEFLATE));
+		OgmSession session = this.repository.createSession().block();
+		String value = new String(new char[4096]).replace('\0', 'a');
+		session.setAttribute("cart", new ArrayList<>(Collections.singletonList(value)));
+
+		StepVerifier.create(this.repository.save(session)).verifyComplete();
+
+		ArgumentCaptor<Map> parameters = ArgumentCaptor.forClass(Map.class);
+		verify(this.session, times(1)).runAsync(isA(String.class), parameters.capture());
+		Map<String, Object> nodeProperties = (Map<String, Object>) parameters.getValue()
+				.get(OgmSessionRepository.NODE_PROPERTEIS);
+		byte[] bytes = (byte[]) nodeProperties.get(OgmSessionRepository.ATTRIBUTE_KEY_PREFIX + "cart");
+		assertThat(AttributeCompressor.isCompressed(bytes)).isTrue();
+		assertThat(AttributeCompressor.decompress(bytes)[0]).isEqualTo(KryoSessionAttributeSerializer.FORMAT);
+	}
+
+	@Test
+	public void saveUnchanged() {
+		OgmSession session = this.repository.createSession().block();
+		session.clearChangeFlags();
+
+		StepVerifier.create(this.repository.save(session)).verifyComplete();
+
+		verifyZeroInteractions(this.driver);
+	}
+
+	@Test
+	public void findByIdFound() {
+		long now = new Date().getTime();
+		Map<String, Value> properties = new HashMap<>();
+		properties.put(OgmSessionRepository.SESSION_ID, Values.value("testSessionId"));
+		properties.put(OgmSessionRepository.CREATION_TIME, Values.value(now));
+		properties.put(OgmSessionRepository.LAST_ACCESS_TIME, Values.value(now));
+		properties.put(OgmSessionRepository.MAX_INACTIVE_INTERVAL, Values.value(1800000L));
+		Record record = mock(Record.class);
+		given(record.get("n")).willReturn(
+				new InternalNode(1L, Collections.singletonList("SPRING_SESSION"), properties).asValue());
+		givenRecords(Collections.singletonList(record));
+
+		StepVerifier.create(this.repository.findById("testSessionId"))
+				.assertNext(session -> {
+					assertThat(session.getId()).isEqualTo("testSessionId");
+					assertThat(session.getMaxInactiveInterval()).isEqualTo(Duration.ofMinutes(30));
+				})
+				.verifyComplete();
+
+		verify(this.driver, times(1)).session(AccessMode.READ);
+		verify(this.session, times(1)).closeAsync();
+	}
+
+	@Test
+	public void findByIdNotFound() {
+		givenRecords(new ArrayList<>());
+
+		StepVerifier.create(this.repository.findById("testSessionId")).verifyComplete();
+
+		verify(this.session, times(1)).closeAsync();
+	}
+
+	@Test
+	public void delete() {
+		givenRecords(new ArrayList<>());
+
+		StepVerifier.create(this.repository.delete("testSessionId")).verifyComplete();
+
+		verify(this.driver, times(1)).session(AccessMode.WRITE);
+		verify(this.session, times(1)).runAsync(
+				eq("match (n:SPRING_SESSION) where n.sessionId={sessionId} detach delete n"),
+				isA(Map.class));
+	}
+
+	@SuppressWarnings("unchecked")
+	private void givenRecords(List<Record> records) {
+		given(this.driver.session(any(AccessMode.class))).willReturn(this.session);
+		given(this.session.runAsync(isA(String.class), isA(Map.class)))
+				.willReturn(CompletableFuture.completedFuture(this.cursor));
+		given(this.cursor.listAsync()).willReturn(CompletableFuture.completedFuture(records));
+		given(this.session.closeAsync()).willReturn(CompletableFuture.completedFuture(null));
+	}
+
+}
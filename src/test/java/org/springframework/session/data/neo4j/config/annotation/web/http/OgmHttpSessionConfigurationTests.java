@@ -19,10 +19,17 @@ package org.springframework.session.data.neo4j.config.annotation.web.http;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.After;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.neo4j.driver.v1.Driver;
 import org.neo4j.ogm.session.SessionFactory;
 import org.springframework.beans.factory.UnsatisfiedDependencyException;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -32,7 +39,12 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
 import org.springframework.core.convert.ConversionService;
 import org.springframework.mock.env.MockEnvironment;
+import org.springframework.session.data.neo4j.AttributeCompressor;
+import org.springframework.session.data.neo4j.BoltSessionRepository;
+import org.springframework.session.data.neo4j.JacksonSessionAttributeSerializer;
+import org.springframework.session.data.neo4j.MicrometerOgmSessionMetrics;
 import org.springframework.session.data.neo4j.OgmSessionRepository;
+import org.springframework.session.data.neo4j.SessionAttributeSerializer;
 import org.springframework.test.util.ReflectionTestUtils;
 
 /**
@@ -145,6 +157,91 @@ public class OgmHttpSessionConfigurationTests {
 				.isEqualTo(MAX_INACTIVE_INTERVAL_IN_SECONDS);
 	}
 
+	@Test
+	public void initializeSchemaConfiguration() {
+		registerAndRefresh(InitializeSchemaConfiguration.class);
+
+		OgmSessionRepository repository = this.context
+				.getBean(OgmSessionRepository.class);
+		assertThat(repository).isNotNull();
+		assertThat(ReflectionTestUtils.getField(repository, "initializeSchema"))
+				.isEqualTo(true);
+	}
+
+	@Test
+	public void writeBehindConfiguration() {
+		registerAndRefresh(WriteBehindConfiguration.class);
+
+		OgmSessionRepository repository = this.context
+				.getBean(OgmSessionRepository.class);
+		assertThat(repository).isNotNull();
+		assertThat(ReflectionTestUtils.getField(repository, "writeBehind"))
+				.isEqualTo(true);
+	}
+
+	@Test
+	public void cleanupConfiguration() {
+		registerAndRefresh(CleanupConfiguration.class);
+
+		OgmSessionRepository repository = this.context
+				.getBean(OgmSessionRepository.class);
+		assertThat(repository).isNotNull();
+		assertThat(ReflectionTestUtils.getField(repository, "cleanupBatchSize"))
+				.isEqualTo(100);
+		assertThat(ReflectionTestUtils.getField(repository, "cleanupBatchPause"))
+				.isEqualTo(Duration.ofMillis(50));
+		assertThat(ReflectionTestUtils.getField(repository, "cleanupTimeBudget"))
+				.isEqualTo(Duration.ofSeconds(30));
+		assertThat(ReflectionTestUtils.getField(repository, "cleanupJitter"))
+				.isEqualTo(Duration.ofSeconds(10));
+		assertThat(ReflectionTestUtils.getField(repository, "cleanupLock"))
+				.isEqualTo(true);
+		assertThat(ReflectionTestUtils.getField(repository, "cleanupLockTimeToLive"))
+				.isEqualTo(Duration.ofMinutes(5));
+	}
+
+	@Test
+	public void boltDriverConfiguration() {
+		registerAndRefresh(BoltDriverConfiguration.class);
+
+		OgmSessionRepository repository = this.context
+				.getBean(OgmSessionRepository.class);
+		assertThat(repository).isInstanceOf(BoltSessionRepository.class);
+		assertThat(ReflectionTestUtils.getField(repository, "sessionFactory")).isNull();
+		assertThat(ReflectionTestUtils.getField(repository, "label"))
+				.isEqualTo(TABLE_NAME);
+	}
+
+	@Test
+	public void meterRegistryConfiguration() {
+		registerAndRefresh(MeterRegistryConfiguration.class);
+
+		OgmSessionRepository repository = this.context
+				.getBean(OgmSessionRepository.class);
+		assertThat(ReflectionTestUtils.getField(repository, "metrics"))
+				.isInstanceOf(MicrometerOgmSessionMetrics.class);
+	}
+
+	@Test
+	public void attributeSerializerConfiguration() {
+		registerAndRefresh(AttributeSerializerConfiguration.class);
+
+		OgmSessionRepository repository = this.context
+				.getBean(OgmSessionRepository.class);
+		byte[] bytes = repository.serialize(new ArrayList<>(Arrays.asList("a", "b")));
+		assertThat(bytes[0]).isEqualTo(JacksonSessionAttributeSerializer.FORMAT);
+	}
+
+	@Test
+	public void attributeCompressorConfiguration() {
+		registerAndRefresh(AttributeCompressorConfiguration.class);
+
+		OgmSessionRepository repository = this.context
+				.getBean(OgmSessionRepository.class);
+		assertThat(ReflectionTestUtils.getField(repository, "attributeCompressor"))
+				.isSameAs(this.context.getBean(AttributeCompressor.class));
+	}
+
 	@Test
 	public void customConversionServiceConfiguration() {
 		registerAndRefresh(CustomConversionServiceConfiguration.class);
@@ -222,6 +319,67 @@ public class OgmHttpSessionConfigurationTests {
 			extends BaseConfiguration {
 	}
 
+	@Configuration
+	@EnableOgmHttpSession(initializeSchema = true)
+	static class InitializeSchemaConfiguration extends BaseConfiguration {
+	}
+
+	@Configuration
+	@EnableOgmHttpSession(writeBehind = true)
+	static class WriteBehindConfiguration extends BaseConfiguration {
+	}
+
+	@Configuration
+	@EnableOgmHttpSession(cleanupBatchSize = 100, cleanupBatchPauseInMillis = 50,
+			cleanupTimeBudgetInSeconds = 30, cleanupJitterInSeconds = 10, cleanupLock = true,
+			cleanupLockTimeToLiveInSeconds = 300)
+	static class CleanupConfiguration extends BaseConfiguration {
+	}
+
+	@Configuration
+	@EnableOgmHttpSession(label = TABLE_NAME, useBoltDriver = true)
+	static class BoltDriverConfiguration {
+
+		@Bean
+		public Driver springSessionNeo4jDriver() {
+			return mock(Driver.class);
+		}
+
+	}
+
+	@Configuration
+	@EnableOgmHttpSession
+	static class MeterRegistryConfiguration extends BaseConfiguration {
+
+		@Bean
+		public MeterRegistry meterRegistry() {
+			return new SimpleMeterRegistry();
+		}
+
+	}
+
+	@Configuration
+	@EnableOgmHttpSession
+	static class AttributeSerializerConfiguration extends BaseConfiguration {
+
+		@Bean
+		public SessionAttributeSerializer springSessionAttributeSerializer() {
+			return new JacksonSessionAttributeSerializer("org.springframework.session.data.neo4j");
+		}
+
+	}
+
+	@Configuration
+	@EnableOgmHttpSession
+	static class AttributeCompressorConfiguration extends BaseConfiguration {
+
+		@Bean
+		public AttributeCompressor springSessionAttributeCompressor() {
+			return new AttributeCompressor(AttributeCompressor.Algorithm.DEFLATE);
+		}
+
+	}
+
 	@Configuration
 	@EnableOgmHttpSession
 	static class CustomConversionServiceConfiguration extends BaseConfiguration {